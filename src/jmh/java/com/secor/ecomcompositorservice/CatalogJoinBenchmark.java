@@ -0,0 +1,109 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * The productCatalog join end to end - catalog read, batched inventory lookups over HTTP, join - against
+ * in-process Reactor Netty stubs of the catalog and inventory services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CatalogJoinBenchmark {
+
+    @Param({"100", "1000"})
+    int products;
+
+    private final ObjectMapper mapper = new JacksonConfig().objectMapper();
+
+    private DisposableServer stub;
+    private CompositorController controller;
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] catalog = mapper.writeValueAsBytes(LongStream.rangeClosed(1, products)
+                .mapToObj(JsonCodecBenchmark.Fixtures::product)
+                .toList());
+        stub = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .get("/products", (request, response) -> response
+                                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                .sendByteArray(Mono.just(catalog)))
+                        .get("/inventory/batch", (request, response) -> response
+                                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                .sendByteArray(Mono.fromCallable(() -> inventoriesFor(request.uri())))))
+                .bindNow();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WebClient inventoryWebClient = WebClient.create("http://localhost:" + stub.port() + "/inventory");
+
+        InventoryBatchLoader inventoryBatchLoader = new InventoryBatchLoader(meterRegistry);
+        inventoryBatchLoader.inventoryWebClient = inventoryWebClient;
+        inventoryBatchLoader.batchSize = 100;
+        inventoryBatchLoader.batchWindow = Duration.ofMillis(20);
+        inventoryBatchLoader.concurrency = 4;
+        inventoryBatchLoader.batchPath = "/batch";
+
+        controller = new CompositorController();
+        controller.viewCache = new ViewCache(new InMemoryViewStore(), meterRegistry,
+                Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(5),
+                Duration.ofSeconds(10), Duration.ofSeconds(30), 10_000);
+        controller.singleFlight = new SingleFlight(meterRegistry, Duration.ZERO);
+        controller.inventoryBatchLoader = inventoryBatchLoader;
+        controller.catalogWebClient = WebClient.create("http://localhost:" + stub.port() + "/products");
+        controller.inventoryWebClient = inventoryWebClient;
+    }
+
+    @TearDown
+    public void tearDown() {
+        stub.disposeNow();
+    }
+
+    // THE CATALOG COMES FROM THE NEAR CACHE AFTER THE FIRST CALL, AS IN STEADY STATE
+    @Benchmark
+    public List<ProductCatalogView> cachedCatalog() {
+        return controller.getProductsAndInventories().collectList().block();
+    }
+
+    // A PAGE ALWAYS READS THE CATALOG OVER HTTP
+    @Benchmark
+    public List<ProductCatalogView> catalogPage() {
+        return controller.getProductCatalogPage(null, products).collectList().block();
+    }
+
+    private byte[] inventoriesFor(String uri) throws Exception {
+        List<InventoryView> inventories = new QueryStringDecoder(uri).parameters().getOrDefault("productIds", List.of()).stream()
+                .map(productId -> JsonCodecBenchmark.Fixtures.inventory(Long.parseLong(productId)))
+                .toList();
+        return mapper.writeValueAsBytes(inventories);
+    }
+}
@@ -0,0 +1,70 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of DownstreamMetricsFilter (recording into a Prometheus registry) against an
+ * exchange that answers immediately, with the bare exchange as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownstreamMetricsFilterBenchmark {
+
+    private DownstreamMetricsFilter filter;
+    private ClientRequest request;
+    private ExchangeFunction exchange;
+
+    @Setup
+    public void setUp() {
+        filter = new DownstreamMetricsFilter("ecom-catalog-service", new PrometheusMeterRegistry(PrometheusConfig.DEFAULT),
+                new Duration[]{Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(100)}, 0.01);
+        request = ClientRequest.create(HttpMethod.GET, URI.create("http://ecom-catalog-service/products/7"))
+                .attribute(WebClient.class.getName() + ".uriTemplate", "http://ecom-catalog-service/products/{id}")
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.USER_AGENT, "ReactorNetty/1.1")
+                .header("traceparent", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01")
+                .build();
+        ClientResponse response = ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_LENGTH, "512")
+                .build();
+        exchange = ignored -> Mono.just(response);
+    }
+
+    @Benchmark
+    public ClientResponse baseline() {
+        return exchange.exchange(request).block();
+    }
+
+    @Benchmark
+    public ClientResponse filtered() {
+        return filter.filter(request, exchange).block();
+    }
+}
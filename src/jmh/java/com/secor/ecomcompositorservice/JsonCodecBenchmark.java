@@ -0,0 +1,144 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of the downstream views through the application's ObjectMapper (JacksonConfig).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private ObjectMapper mapper;
+
+    private ProductView product;
+    private InventoryView inventory;
+    private OrderView order;
+    private PaymentView payment;
+
+    private byte[] productJson;
+    private byte[] inventoryJson;
+    private byte[] orderJson;
+    private byte[] paymentJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        mapper = new JacksonConfig().objectMapper();
+        product = Fixtures.product(7L);
+        inventory = Fixtures.inventory(7L);
+        order = Fixtures.order(1L, 7L);
+        payment = Fixtures.payment(1L);
+        productJson = mapper.writeValueAsBytes(product);
+        inventoryJson = mapper.writeValueAsBytes(inventory);
+        orderJson = mapper.writeValueAsBytes(order);
+        paymentJson = mapper.writeValueAsBytes(payment);
+    }
+
+    @Benchmark
+    public byte[] writeProduct() throws Exception {
+        return mapper.writeValueAsBytes(product);
+    }
+
+    @Benchmark
+    public ProductView readProduct() throws Exception {
+        return mapper.readValue(productJson, ProductView.class);
+    }
+
+    @Benchmark
+    public byte[] writeInventory() throws Exception {
+        return mapper.writeValueAsBytes(inventory);
+    }
+
+    @Benchmark
+    public InventoryView readInventory() throws Exception {
+        return mapper.readValue(inventoryJson, InventoryView.class);
+    }
+
+    @Benchmark
+    public byte[] writeOrder() throws Exception {
+        return mapper.writeValueAsBytes(order);
+    }
+
+    @Benchmark
+    public OrderView readOrder() throws Exception {
+        return mapper.readValue(orderJson, OrderView.class);
+    }
+
+    @Benchmark
+    public byte[] writePayment() throws Exception {
+        return mapper.writeValueAsBytes(payment);
+    }
+
+    @Benchmark
+    public PaymentView readPayment() throws Exception {
+        return mapper.readValue(paymentJson, PaymentView.class);
+    }
+
+    static final class Fixtures {
+
+        private Fixtures() {
+        }
+
+        static ProductView product(long productId) {
+            ProductView product = new ProductView();
+            product.setProductId(productId);
+            product.setProductName("Product " + productId);
+            product.setDescription("A product that is described in a sentence or two, as the catalog does.");
+            product.setPrice(new BigDecimal("19.99"));
+            product.setCategory("electronics");
+            product.setCreatedAt(LocalDateTime.of(2024, 1, 1, 10, 0));
+            product.setUpdatedAt(LocalDateTime.of(2024, 6, 1, 10, 0));
+            return product;
+        }
+
+        static InventoryView inventory(long productId) {
+            InventoryView inventory = new InventoryView();
+            inventory.setInventoryId(productId + 1000);
+            inventory.setProductId(productId);
+            inventory.setQuantity(250);
+            inventory.setLastUpdated(LocalDateTime.of(2024, 6, 1, 10, 0));
+            return inventory;
+        }
+
+        static OrderView order(long orderId, long productId) {
+            OrderView order = new OrderView();
+            order.setOrderId(orderId);
+            order.setProductId(productId);
+            order.setQuantity(2);
+            order.setCustomerId(42L);
+            order.setOrderDate(LocalDateTime.of(2024, 6, 1, 10, 0));
+            order.setStatus("PENDING_PAYMENT");
+            order.setTotalAmount(new BigDecimal("39.98"));
+            return order;
+        }
+
+        static PaymentView payment(long orderId) {
+            PaymentView payment = new PaymentView();
+            payment.setPaymentId(orderId + 500);
+            payment.setOrderId(orderId);
+            payment.setPaymentDate(LocalDateTime.of(2024, 6, 1, 10, 0));
+            payment.setAmount(new BigDecimal("39.98"));
+            payment.setPaymentMethod("ONLINE");
+            payment.setStatus("PENDING_PAYMENT");
+            return payment;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What an order event costs the request path before its outbox INSERT (building the Analytic and
+ * serializing it) and what handing it to the publish pipeline costs the outbox relay, measured separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProducerBenchmark {
+
+    private final MockProducer<String, String> kafka = new MockProducer<>(true, new StringSerializer(), new StringSerializer()) {
+        @Override
+        public void close(Duration timeout) {
+        }
+    };
+
+    private Producer producer;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setUp() {
+        mapper = new JacksonConfig().objectMapper();
+        producer = new Producer();
+        producer.kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> kafka));
+        producer.meterRegistry = new SimpleMeterRegistry();
+        producer.bufferCapacity = 1_000_000;
+        producer.enqueueTimeout = Duration.ofSeconds(1);
+        producer.start();
+    }
+
+    // MOCKPRODUCER KEEPS EVERY RECORD, SO ITS HISTORY IS DROPPED BETWEEN ITERATIONS
+    @TearDown(Level.Iteration)
+    public void clearHistory() {
+        kafka.clear();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        producer.stop();
+    }
+
+    @Benchmark
+    public Object send() {
+        return producer.send("ecom-order-events", "42", "{\"principal\":\"42\",\"description\":\"ORDER CREATED\"}");
+    }
+
+    @Benchmark
+    public String serializeEvent() throws Exception {
+        return mapper.writeValueAsString(Analytic.update("42", "ORDER CREATED"));
+    }
+}
@@ -0,0 +1,241 @@
+package com.secor.ecomcompositorservice;
+
+import io.netty.handler.codec.http.HttpMethod;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Self-contained load test: starts the stub downstreams, boots the compositor against them (simple discovery,
+ * in-memory cache, H2, no Kafka relay) and drives each scenario with an open model - requests are sent on a
+ * fixed schedule whether or not earlier ones have answered, and latency is measured from the scheduled send
+ * time, so a stall shows up in the percentiles instead of silently lowering the load (coordinated omission).
+ *
+ * <p>Run with {@code mvn -Ploadtest -DskipTests verify -Dloadtest.args="--scenario=createOrder --rate=500"}.
+ * Options (all {@code --key=value}): scenario (createOrder, processPayment, productCatalog, comma separated),
+ * rate (requests/s), warmup, duration, products, label, out, stub.median, stub.p99, stub.error-rate, the same
+ * three per service as stub.&lt;service-name&gt;.median etc., and app.&lt;property&gt; to pass settings to the app.
+ */
+public class LoadTestHarness {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Map<String, String> options;
+
+    LoadTestHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        new LoadTestHarness(options).run();
+        System.exit(0);
+    }
+
+    void run() throws IOException {
+        int products = Integer.parseInt(option("products", "1000"));
+        Map<String, StubDownstreams.LatencyProfile> profiles = new LinkedHashMap<>();
+        for (String service : StubDownstreams.SERVICES) {
+            profiles.put(service, new StubDownstreams.LatencyProfile(
+                    duration(option("stub." + service + ".median", option("stub.median", "5ms"))),
+                    duration(option("stub." + service + ".p99", option("stub.p99", "50ms"))),
+                    Double.parseDouble(option("stub." + service + ".error-rate", option("stub.error-rate", "0")))));
+        }
+
+        try (StubDownstreams stubs = new StubDownstreams(products, profiles);
+             ConfigurableApplicationContext app = startApplication(stubs.ports())) {
+            int port = Integer.parseInt(app.getEnvironment().getProperty("local.server.port"));
+            // createOrder CHECKS THE CUSTOMER, AND EVERY GENERATED ORDER IS FOR CUSTOMER 1 (THE FIRST IDENTITY VALUE)
+            Customers customer = new Customers();
+            customer.setFirstName("Load");
+            customer.setLastName("Test");
+            app.getBean(CustomersRepository.class).save(customer);
+            ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                    .maxConnections(Integer.parseInt(option("connections", "2000")))
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            HttpClient client = HttpClient.create(connections).baseUrl("http://localhost:" + port).responseTimeout(REQUEST_TIMEOUT);
+            try {
+                for (String scenario : option("scenario", "productCatalog,createOrder,processPayment").split(",")) {
+                    runScenario(client, scenario.trim(), products);
+                }
+            } finally {
+                connections.disposeLater().block();
+            }
+        }
+    }
+
+    private void runScenario(HttpClient client, String scenario, int products) throws IOException {
+        double rate = Double.parseDouble(option("rate", "100"));
+        Duration warmup = duration(option("warmup", "10s"));
+        Duration duration = duration(option("duration", "60s"));
+
+        System.out.printf("%s: warming up for %s at %.0f req/s%n", scenario, warmup, rate);
+        drive(client, scenario, products, rate, warmup, new ConcurrentHistogram(3), new AtomicLong(), new AtomicLong(1));
+
+        System.out.printf("%s: measuring for %s at %.0f req/s%n", scenario, duration, rate);
+        Histogram latencies = new ConcurrentHistogram(3);
+        AtomicLong errors = new AtomicLong();
+        long started = System.nanoTime();
+        long sent = drive(client, scenario, products, rate, duration, latencies, errors, new AtomicLong(1_000_000));
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+        report(scenario, rate, duration, sent, errors.get(), latencies, elapsedSeconds);
+    }
+
+    /**
+     * Sends requests at {@code rate} for {@code duration}, then waits for stragglers. Returns how many were sent.
+     */
+    private long drive(HttpClient client, String scenario, int products, double rate, Duration duration,
+                       Histogram latencies, AtomicLong errors, AtomicLong sequence) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        AtomicLong outstanding = new AtomicLong();
+        long sent = 0;
+        for (long intended = start; intended < end; intended += interval) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long scheduledAt = intended;
+            outstanding.incrementAndGet();
+            request(client, scenario, products, sequence.getAndIncrement())
+                    .onErrorReturn(599)
+                    .defaultIfEmpty(599)
+                    .subscribe(status -> {
+                        // MEASURED FROM WHEN THE REQUEST SHOULD HAVE GONE OUT, NOT WHEN IT DID
+                        latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduledAt));
+                        if (status >= 400) {
+                            errors.incrementAndGet();
+                        }
+                        outstanding.decrementAndGet();
+                    });
+            sent++;
+        }
+        long deadline = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        return sent;
+    }
+
+    private Mono<Integer> request(HttpClient client, String scenario, int products, long sequence) {
+        return switch (scenario) {
+            case "productCatalog" -> exchange(client, HttpMethod.GET, "/api/v1/productCatalog");
+            case "createOrder" -> exchange(client, HttpMethod.POST,
+                    "/api/v1/createOrder?productId=" + (sequence % products + 1) + "&quantity=1&customerId=1");
+            case "processPayment" -> exchange(client, HttpMethod.PUT, "/api/v1/processPayment?orderId=" + sequence);
+            default -> throw new IllegalArgumentException("Unknown scenario " + scenario);
+        };
+    }
+
+    private static Mono<Integer> exchange(HttpClient client, HttpMethod method, String uri) {
+        return client.request(method)
+                .uri(uri)
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code())));
+    }
+
+    private void report(String scenario, double rate, Duration duration, long sent, long errors, Histogram latencies,
+                        double elapsedSeconds) throws IOException {
+        Path out = Path.of(option("out", "target/loadtest"));
+        String label = option("label", "local");
+        Files.createDirectories(out);
+
+        // FULL PERCENTILE DISTRIBUTION IN MILLISECONDS, LOADABLE IN THE HDRHISTOGRAM PLOTTER
+        try (PrintStream hgrm = new PrintStream(Files.newOutputStream(out.resolve(label + "-" + scenario + ".hgrm")))) {
+            latencies.outputPercentileDistribution(hgrm, 1000.0);
+        }
+
+        double throughput = latencies.getTotalCount() / elapsedSeconds;
+        List<String> columns = new ArrayList<>(List.of(label, scenario, format(rate), String.valueOf(duration.toSeconds()),
+                String.valueOf(sent), String.valueOf(errors), format(throughput)));
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            columns.add(format(latencies.getValueAtPercentile(percentile) / 1000.0));
+        }
+        columns.add(format(latencies.getMaxValue() / 1000.0));
+
+        Path summary = out.resolve("summary.csv");
+        if (Files.notExists(summary)) {
+            Files.writeString(summary, "label,scenario,target_rps,duration_s,sent,errors,throughput_rps,p50_ms,p90_ms,p99_ms,p999_ms,max_ms\n");
+        }
+        Files.writeString(summary, String.join(",", columns) + "\n", StandardOpenOption.APPEND);
+
+        System.out.printf("%s: %d sent, %d errors, %.1f req/s, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                scenario, sent, errors, throughput,
+                latencies.getValueAtPercentile(50) / 1000.0, latencies.getValueAtPercentile(99) / 1000.0,
+                latencies.getValueAtPercentile(99.9) / 1000.0, latencies.getMaxValue() / 1000.0);
+    }
+
+    private ConfigurableApplicationContext startApplication(Map<String, Integer> ports) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.cloud.config.enabled=false",
+                "--spring.config.import=",
+                "--eureka.client.enabled=false",
+                "--management.tracing.enabled=false",
+                "--compositor.cache.mode=local",
+                "--compositor.outbox.relay.enabled=false",
+                "--compositor.catalog.snapshot.kafka.enabled=false",
+                "--compositor.orders.async.workers.enabled=false",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=create-drop"));
+        // THE SIMPLE DISCOVERY CLIENT STANDS IN FOR EUREKA
+        ports.forEach((service, port) ->
+                args.add("--spring.cloud.discovery.client.simple.instances." + service + "[0].uri=http://localhost:" + port));
+        options.forEach((key, value) -> {
+            if (key.startsWith("app.")) {
+                args.add("--" + key.substring("app.".length()) + "=" + value);
+            }
+        });
+        return new SpringApplicationBuilder(EcomCompositorServiceApplication.class).run(args.toArray(String[]::new));
+    }
+
+    private String option(String key, String fallback) {
+        return options.getOrDefault(key, fallback);
+    }
+
+    private static Duration duration(String value) {
+        try {
+            return Duration.parse(value);
+        } catch (DateTimeParseException e) {
+            String unit = value.replaceAll("[0-9.]", "");
+            long amount = Long.parseLong(value.substring(0, value.length() - unit.length()));
+            return switch (unit) {
+                case "ms" -> Duration.ofMillis(amount);
+                case "s" -> Duration.ofSeconds(amount);
+                case "m" -> Duration.ofMinutes(amount);
+                default -> throw new IllegalArgumentException("Unsupported duration " + value);
+            };
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -0,0 +1,199 @@
+package com.secor.ecomcompositorservice;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to first request: starts the compositor in a fresh JVM against the stub downstreams and measures
+ * from process launch until GET /api/v1/productCatalog first answers 200, several times over. Each run
+ * is a new process, so class loading, JIT warm-up and any CDS archive or AOT-generated code all count.
+ *
+ * <p>Run with {@code mvn -Ploadtest -DskipTests verify -Dloadtest.main=com.secor.ecomcompositorservice.StartupBenchmark
+ * -Dloadtest.args="--runs=5"}. Options (all {@code --key=value}): runs, label, out, jvm-args (space separated,
+ * e.g. -Dspring.aot.enabled=true for a jar built with -Paot), jar (run a packaged or extracted jar instead of
+ * the build classpath), cds=true (record an archive with a training run first, then start every run from it;
+ * needs jar, since CDS only archives classes from jar files), and app.&lt;property&gt; as in LoadTestHarness.
+ */
+public class StartupBenchmark {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    private final Map<String, String> options;
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+
+    StartupBenchmark(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        new StartupBenchmark(options).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        int runs = Integer.parseInt(option("runs", "5"));
+        Path out = Path.of(option("out", "target/loadtest"));
+        Files.createDirectories(out);
+        List<String> jvmArgs = new ArrayList<>(option("jvm-args", "").isBlank() ? List.of() : Arrays.asList(option("jvm-args", "").trim().split("\\s+")));
+
+        try (StubDownstreams stubs = new StubDownstreams(100, profiles())) {
+            if (Boolean.parseBoolean(option("cds", "false"))) {
+                Path archive = out.resolve("startup.jsa").toAbsolutePath();
+                System.out.println("startup: training run to record " + archive);
+                List<String> training = new ArrayList<>(jvmArgs);
+                training.add("-XX:ArchiveClassesAtExit=" + archive);
+                training.add("-Dspring.context.exit=onRefresh");
+                Process process = launch(training, stubs.ports(), freePort(), out.resolve("startup-training.log"));
+                if (!process.waitFor(STARTUP_TIMEOUT.toSeconds(), TimeUnit.SECONDS) || Files.notExists(archive)) {
+                    process.destroyForcibly();
+                    throw new IllegalStateException("CDS training run failed, see " + out.resolve("startup-training.log"));
+                }
+                jvmArgs.add("-XX:SharedArchiveFile=" + archive);
+            }
+
+            List<Long> timings = new ArrayList<>();
+            for (int run = 1; run <= runs; run++) {
+                long millis = timeToFirstRequest(jvmArgs, stubs.ports(), out.resolve("startup-run.log"));
+                timings.add(millis);
+                System.out.printf("startup: run %d took %d ms to first request%n", run, millis);
+            }
+            report(out, timings);
+        }
+    }
+
+    private long timeToFirstRequest(List<String> jvmArgs, Map<String, Integer> ports, Path log) throws Exception {
+        int port = freePort();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/productCatalog?limit=1"))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+        long start = System.nanoTime();
+        Process process = launch(jvmArgs, ports, port, log);
+        try {
+            long deadline = start + STARTUP_TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Compositor exited with " + process.exitValue() + ", see " + log);
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (IOException e) {
+                    // NOT LISTENING YET
+                }
+                Thread.sleep(10);
+            }
+            throw new IllegalStateException("Compositor did not answer within " + STARTUP_TIMEOUT + ", see " + log);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private Process launch(List<String> jvmArgs, Map<String, Integer> ports, int port, Path log) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(classpath());
+        command.add(EcomCompositorServiceApplication.class.getName());
+        command.addAll(List.of(
+                "--server.port=" + port,
+                "--spring.cloud.config.enabled=false",
+                "--compositor.config.import=",
+                "--eureka.client.enabled=false",
+                "--management.tracing.enabled=false",
+                "--compositor.cache.mode=local",
+                "--compositor.outbox.relay.enabled=false",
+                "--compositor.catalog.snapshot.kafka.enabled=false",
+                "--compositor.orders.async.workers.enabled=false",
+                "--spring.datasource.url=jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=create-drop"));
+        ports.forEach((service, servicePort) ->
+                command.add("--spring.cloud.discovery.client.simple.instances." + service + "[0].uri=http://localhost:" + servicePort));
+        options.forEach((key, value) -> {
+            if (key.startsWith("app.")) {
+                command.add("--" + key.substring("app.".length()) + "=" + value);
+            }
+        });
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    // A PACKAGED JAR DOES NOT CARRY H2 (TEST SCOPE), SO IT IS TAKEN FROM THIS JVM'S CLASSPATH
+    private String classpath() {
+        String ownClasspath = System.getProperty("java.class.path");
+        String jar = options.get("jar");
+        if (jar == null) {
+            return ownClasspath;
+        }
+        List<String> entries = new ArrayList<>(List.of(Path.of(jar).toAbsolutePath().toString()));
+        for (String entry : ownClasspath.split(File.pathSeparator)) {
+            if (Path.of(entry).getFileName().toString().startsWith("h2-")) {
+                entries.add(entry);
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private Map<String, StubDownstreams.LatencyProfile> profiles() {
+        Map<String, StubDownstreams.LatencyProfile> profiles = new LinkedHashMap<>();
+        for (String service : StubDownstreams.SERVICES) {
+            profiles.put(service, new StubDownstreams.LatencyProfile(Duration.ofMillis(1), Duration.ofMillis(5), 0));
+        }
+        return profiles;
+    }
+
+    private void report(Path out, List<Long> timings) throws IOException {
+        List<Long> sorted = timings.stream().sorted().toList();
+        long min = sorted.get(0);
+        long median = sorted.get(sorted.size() / 2);
+        long max = sorted.get(sorted.size() - 1);
+        String label = option("label", "local");
+
+        Path summary = out.resolve("startup.csv");
+        if (Files.notExists(summary)) {
+            Files.writeString(summary, "label,runs,jvm_args,min_ms,median_ms,max_ms\n");
+        }
+        Files.writeString(summary, String.format(Locale.ROOT, "%s,%d,\"%s\",%d,%d,%d%n",
+                label, timings.size(), option("jvm-args", "") + (Boolean.parseBoolean(option("cds", "false")) ? " cds" : ""),
+                min, median, max), StandardOpenOption.APPEND);
+        System.out.printf("startup: %d runs, first request after min %d ms, median %d ms, max %d ms%n", timings.size(), min, median, max);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private String option(String key, String fallback) {
+        return options.getOrDefault(key, fallback);
+    }
+}
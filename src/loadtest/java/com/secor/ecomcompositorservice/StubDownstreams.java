@@ -0,0 +1,161 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import org.reactivestreams.Publisher;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+/**
+ * In-process stand-ins for the catalog, inventory, order and payment services, each on its own port and
+ * each answering after a log-normally distributed delay (set by its median and p99) or failing with a 503
+ * at the configured error rate.
+ */
+public class StubDownstreams implements AutoCloseable {
+
+    public static final List<String> SERVICES = List.of("ecom-catalog-service", "ecom-inventory-service", "ecom-order-service", "ecom-payment-service");
+
+    private final ObjectMapper mapper = new JacksonConfig().objectMapper();
+    private final Map<String, DisposableServer> servers = new LinkedHashMap<>();
+    private final AtomicLong orderIds = new AtomicLong();
+    private final int products;
+
+    public StubDownstreams(int products, Map<String, LatencyProfile> profiles) {
+        this.products = products;
+        servers.put("ecom-catalog-service", start(profiles.get("ecom-catalog-service"), "/products", (method, path, query) ->
+                path.isEmpty() ? catalogPage(query) : product(Long.parseLong(path))));
+        // GET /inventory/{productId} LISTS THE PRODUCT'S STOCK, PUT /inventory/{inventoryId} ECHOES ONE ROW
+        servers.put("ecom-inventory-service", start(profiles.get("ecom-inventory-service"), "/inventory", (method, path, query) -> {
+            if (path.equals("batch")) {
+                return query.getOrDefault("productIds", List.of()).stream().map(id -> inventory(Long.parseLong(id))).toList();
+            }
+            return method == HttpMethod.GET ? List.of(inventory(Long.parseLong(path))) : inventory(Long.parseLong(path));
+        }));
+        servers.put("ecom-order-service", start(profiles.get("ecom-order-service"), "/orders", (method, path, query) ->
+                order(path.isEmpty() ? orderIds.incrementAndGet() : Long.parseLong(path))));
+        servers.put("ecom-payment-service", start(profiles.get("ecom-payment-service"), "/payments", (method, path, query) -> {
+            if (path.startsWith("order/")) {
+                return payment(Long.parseLong(path.substring("order/".length())));
+            }
+            return payment(path.isEmpty() ? orderIds.get() : Long.parseLong(path));
+        }));
+    }
+
+    public Map<String, Integer> ports() {
+        Map<String, Integer> ports = new LinkedHashMap<>();
+        servers.forEach((service, server) -> ports.put(service, server.port()));
+        return ports;
+    }
+
+    @Override
+    public void close() {
+        servers.values().forEach(DisposableServer::disposeNow);
+    }
+
+    private DisposableServer start(LatencyProfile profile, String basePath, Responder responder) {
+        return HttpServer.create()
+                .port(0)
+                .handle((request, response) -> {
+                    QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+                    String path = uri.path().substring(Math.min(uri.path().length(), basePath.length())).replaceFirst("^/", "");
+                    return Mono.delay(profile.sample()).then(Mono.defer(() -> Mono.from(profile.fails()
+                            ? response.status(503).send()
+                            : json(response, () -> responder.respond(request.method(), path, uri.parameters())))));
+                })
+                .bindNow();
+    }
+
+    private Publisher<Void> json(HttpServerResponse response, Callable<Object> body) {
+        return response.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .sendByteArray(Mono.fromCallable(() -> mapper.writeValueAsBytes(body.call())));
+    }
+
+    private List<ProductView> catalogPage(Map<String, List<String>> query) {
+        long after = Long.parseLong(query.getOrDefault("after", List.of("0")).get(0));
+        long limit = Long.parseLong(query.getOrDefault("limit", List.of(String.valueOf(products))).get(0));
+        return LongStream.rangeClosed(after + 1, Math.min(products, after + limit)).mapToObj(this::product).toList();
+    }
+
+    private ProductView product(long productId) {
+        ProductView product = new ProductView();
+        product.setProductId(productId);
+        product.setProductName("Product " + productId);
+        product.setDescription("Load test product " + productId);
+        product.setPrice(new BigDecimal("19.99"));
+        product.setCategory("loadtest");
+        product.setCreatedAt(LocalDateTime.now());
+        return product;
+    }
+
+    private InventoryView inventory(long productId) {
+        InventoryView inventory = new InventoryView();
+        inventory.setInventoryId(productId);
+        inventory.setProductId(productId);
+        inventory.setQuantity(1_000_000);
+        inventory.setLastUpdated(LocalDateTime.now());
+        return inventory;
+    }
+
+    private OrderView order(long orderId) {
+        OrderView order = new OrderView();
+        order.setOrderId(orderId);
+        order.setProductId(orderId % products + 1);
+        order.setQuantity(1);
+        order.setCustomerId(1L);
+        order.setOrderDate(LocalDateTime.now());
+        order.setStatus("PENDING_PAYMENT");
+        order.setTotalAmount(new BigDecimal("19.99"));
+        return order;
+    }
+
+    private PaymentView payment(long orderId) {
+        PaymentView payment = new PaymentView();
+        payment.setPaymentId(orderId);
+        payment.setOrderId(orderId);
+        payment.setAmount(new BigDecimal("19.99"));
+        payment.setPaymentMethod("ONLINE");
+        payment.setStatus("PENDING_PAYMENT");
+        return payment;
+    }
+
+    private interface Responder {
+        Object respond(HttpMethod method, String path, Map<String, List<String>> query);
+    }
+
+    /**
+     * Log-normal service time fitted to a median and a p99, plus a failure probability.
+     */
+    public record LatencyProfile(Duration median, Duration p99, double errorRate) {
+
+        // Z-SCORE OF THE 99TH PERCENTILE OF THE STANDARD NORMAL DISTRIBUTION
+        private static final double Z_99 = 2.3263;
+
+        Duration sample() {
+            if (median.isZero()) {
+                return Duration.ZERO;
+            }
+            double sigma = Math.log((double) Math.max(p99.toNanos(), median.toNanos()) / median.toNanos()) / Z_99;
+            return Duration.ofNanos((long) (median.toNanos() * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian())));
+        }
+
+        boolean fails() {
+            return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+        }
+    }
+}
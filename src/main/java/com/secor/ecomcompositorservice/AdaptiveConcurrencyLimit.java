@@ -0,0 +1,89 @@
+package com.secor.ecomcompositorservice;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit that follows measured latency, in the style of the gradient limiters: a long-term
+ * latency average stands in for the no-queueing latency, and while the short-term average stays close to
+ * it the limit grows by about sqrt(limit) per sample. Once requests start queueing the short-term average
+ * pulls away and the limit shrinks in proportion, by at most half per sample.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    // HOW FAR THE SHORT-TERM LATENCY MAY DRIFT ABOVE THE BASELINE BEFORE THE LIMIT STARTS SHRINKING
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final int SHORT_WINDOW = 10;
+    private static final int LONG_WINDOW = 500;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private double shortRtt;
+    private double longRtt;
+    private long samples;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Takes a slot if fewer than {@code share} of the current limit are in use.
+     */
+    public boolean tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (limit * share));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Frees the slot and feeds the request's latency into the limit.
+     */
+    public void release(long rttNanos) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        update(rttNanos, inFlightBefore);
+    }
+
+    private synchronized void update(long rttNanos, int inFlightBefore) {
+        samples++;
+        if (samples == 1) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+            return;
+        }
+        shortRtt += (rttNanos - shortRtt) / Math.min(samples, SHORT_WINDOW);
+        longRtt += (rttNanos - longRtt) / Math.min(samples, LONG_WINDOW);
+        // A SLOW SPELL LEAVES THE BASELINE INFLATED LONG AFTER LATENCY HAS COME BACK DOWN, WHICH WOULD LET THE LIMIT
+        // GROW AGAINST A BASELINE THE ENDPOINT NO LONGER MEETS; WHEN RECENT LATENCY IS WELL UNDER IT, DRAG IT DOWN FASTER
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        // AN APP-LIMITED ENDPOINT SAYS NOTHING ABOUT WHETHER A HIGHER LIMIT WOULD HOLD, SO ONLY SHRINK THEN
+        if (inFlightBefore < limit / 2 && shortRtt <= longRtt * TOLERANCE) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double target = limit * gradient + Math.sqrt(limit);
+        double next = limit * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,203 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control for the order and catalog endpoints. Each has its own adaptive concurrency limit and
+ * anything over it is turned away at once with 503 and Retry-After, before it can queue behind work that
+ * is already late. Endpoints are ranked - completing an order first, then placing one, then bulk orders,
+ * then browsing the catalog and last streaming it - and while a higher-ranked endpoint is near its limit
+ * the lower-ranked ones only get part of theirs. Bulk orders and catalog streams hold a slot far longer
+ * than a single order or page, so they are limited apart from those; a stream's duration says nothing about
+ * overload, so its limit is fixed rather than adaptive.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    // HIGHEST PRIORITY FIRST
+    private static final List<String> ENDPOINTS = List.of("processPayment", "createOrder", "createOrders", "productCatalog", "productCatalogStream");
+    private static final String STREAM = "productCatalogStream";
+
+    private final Map<String, AdaptiveConcurrencyLimit> limits = new LinkedHashMap<>();
+    private final Map<String, Counter> rejectedOverLimit = new LinkedHashMap<>();
+    private final Map<String, Counter> rejectedShed = new LinkedHashMap<>();
+    private final boolean enabled;
+    private final double shedThreshold;
+    private final double shedShare;
+    private final String retryAfter;
+
+    public AdmissionControlFilter(MeterRegistry meterRegistry,
+                                  @Value("${compositor.admission.enabled:true}") boolean enabled,
+                                  @Value("${compositor.admission.initial-limit:20}") int initialLimit,
+                                  @Value("${compositor.admission.min-limit:4}") int minLimit,
+                                  @Value("${compositor.admission.max-limit:200}") int maxLimit,
+                                  @Value("${compositor.admission.stream-limit:50}") int streamLimit,
+                                  @Value("${compositor.admission.shed-threshold:0.8}") double shedThreshold,
+                                  @Value("${compositor.admission.shed-share:0.5}") double shedShare,
+                                  @Value("${compositor.admission.retry-after:1s}") Duration retryAfter) {
+        this.enabled = enabled;
+        this.shedThreshold = shedThreshold;
+        this.shedShare = shedShare;
+        this.retryAfter = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+        for (String endpoint : ENDPOINTS) {
+            AdaptiveConcurrencyLimit limit = STREAM.equals(endpoint)
+                    ? new AdaptiveConcurrencyLimit(streamLimit, streamLimit, streamLimit)
+                    : new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit);
+            limits.put(endpoint, limit);
+            Gauge.builder("compositor.admission.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                    .description("Current adaptive concurrency limit")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+            Gauge.builder("compositor.admission.inflight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                    .description("Admitted requests not yet answered")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+            rejectedOverLimit.put(endpoint, rejected(meterRegistry, endpoint, "limit"));
+            rejectedShed.put(endpoint, rejected(meterRegistry, endpoint, "shed"));
+        }
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String endpoint, String reason) {
+        return Counter.builder("compositor.admission.rejected")
+                .description("Requests turned away with 503")
+                .tags("endpoint", endpoint, "reason", reason)
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || endpoint(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String endpoint = endpoint(request);
+        AdaptiveConcurrencyLimit limit = limits.get(endpoint);
+        boolean shedding = higherPriorityUnderPressure(endpoint);
+        if (!limit.tryAcquire(shedding ? shedShare : 1.0)) {
+            (shedding ? rejectedShed : rejectedOverLimit).get(endpoint).increment();
+            LOG.debug("Rejected {} at limit {} ({} in flight, shedding={})", endpoint, limit.getLimit(), limit.getInFlight(), shedding);
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Over capacity, retry later");
+            return;
+        }
+        long start = System.nanoTime();
+        Release release = new Release(limit, start);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            // THE CONTROLLER RETURNS A MONO OR FLUX, SO THE REQUEST IS USUALLY STILL RUNNING WHEN THE CHAIN RETURNS
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(release);
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    private boolean higherPriorityUnderPressure(String endpoint) {
+        for (String higher : ENDPOINTS) {
+            if (higher.equals(endpoint)) {
+                return false;
+            }
+            AdaptiveConcurrencyLimit limit = limits.get(higher);
+            if (limit.getInFlight() >= limit.getLimit() * shedThreshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String endpoint(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith("/api/v1/")) {
+            return null;
+        }
+        String name = path.substring("/api/v1/".length());
+        return switch (name) {
+            case "processPayment" -> "processPayment";
+            case "createOrder" -> "createOrder";
+            case "createOrders" -> "createOrders";
+            case "productCatalog" -> isStream(request) ? STREAM : "productCatalog";
+            default -> null;
+        };
+    }
+
+    // THE SAME PATH SERVES A JSON PAGE OR, BY ACCEPT HEADER, AN NDJSON OR SSE STREAM OF THE WHOLE CATALOG
+    private static boolean isStream(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && (accept.contains(MediaType.APPLICATION_NDJSON_VALUE) || accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE));
+    }
+
+    AdaptiveConcurrencyLimit limitFor(String endpoint) {
+        return limits.get(endpoint);
+    }
+
+    private static final class Release implements AsyncListener, Runnable {
+
+        private final AdaptiveConcurrencyLimit limit;
+        private final long start;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Release(AdaptiveConcurrencyLimit limit, long start) {
+            this.limit = limit;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            if (released.compareAndSet(false, true)) {
+                limit.release(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // A RE-DISPATCH STARTING ASYNC AGAIN WOULD DROP THIS LISTENER, SO CARRY IT OVER
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.time.LocalTime;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Getter
 @Setter
@@ -15,4 +16,14 @@ public class Analytic {
     private LocalTime timestamp;
     private String description;
 
-}
\ No newline at end of file
+    public static Analytic update(String principal, String description) {
+        Analytic analytic = new Analytic();
+        analytic.setObjectid(String.valueOf(ThreadLocalRandom.current().nextInt()));
+        analytic.setType("UPDATE");
+        analytic.setPrincipal(principal);
+        analytic.setDescription(description);
+        analytic.setTimestamp(LocalTime.now()); // SETTING THE TIMESTAMP OF THE MESSAGE
+        return analytic;
+    }
+
+}
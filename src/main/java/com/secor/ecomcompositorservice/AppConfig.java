@@ -1,74 +1,70 @@
 package com.secor.ecomcompositorservice;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cloud.client.ServiceInstance;
-import org.springframework.cloud.netflix.eureka.EurekaDiscoveryClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
 
-
-import java.util.List;
+import java.time.Duration;
 
 @Configuration
+@EnableConfigurationProperties({DownstreamProperties.class, ResilienceProperties.class})
 public class AppConfig {
 
     @Autowired
-    private EurekaDiscoveryClient discoveryClient;
-
-    public ServiceInstance getServiceInstance(String serviceName) {
-        List<ServiceInstance> instances = discoveryClient.getInstances(serviceName);
-        if (instances.isEmpty()) {
-            throw new RuntimeException("No instances found for " + serviceName);
-        }
-        return instances.get(0); // LOAD BALANCING ALGORITHM WILL GO HERE
-    }
+    private ServiceInstanceRegistry serviceInstanceRegistry;
+
+    @Autowired
+    private DownstreamConnectorFactory downstreamConnectorFactory;
+
+    @Autowired
+    private DownstreamResilience downstreamResilience;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${compositor.loadbalancer.strategy:ewma}")
+    private String loadBalancerStrategy;
+
+    @Value("${compositor.downstream.metrics.slo:10ms,50ms,100ms,250ms,500ms,1s}")
+    private Duration[] downstreamSlos;
+
+    // SHARE OF CALLS THAT GET A DEBUG LINE WHEN DEBUG IS ON FOR DownstreamMetricsFilter
+    @Value("${compositor.downstream.log.sample-rate:0.01}")
+    private double downstreamLogSampleRate;
 
     @Bean("catalogWebClient")
     public WebClient webClientProfileService(WebClient.Builder webClientBuilder) {
-        ServiceInstance instance = getServiceInstance("ecom-catalog-service");
-        String hostname = instance.getHost();
-        int port = instance.getPort();
-
-        return webClientBuilder
-                .baseUrl("http://" + hostname + ":" + port + "/products")
-                .filter(new LoggingWebClientFilter())
-                .build();
+        return downstreamWebClient(webClientBuilder, "ecom-catalog-service", "/products");
     }
 
     @Bean("inventoryWebClient")
     public WebClient webClientInventoryService(WebClient.Builder webClientBuilder) {
-        ServiceInstance instance = getServiceInstance("ecom-inventory-service");
-        String hostname = instance.getHost();
-        int port = instance.getPort();
-
-        return webClientBuilder
-                .baseUrl("http://" + hostname + ":" + port + "/inventory")
-                .filter(new LoggingWebClientFilter())
-                .build();
+        return downstreamWebClient(webClientBuilder, "ecom-inventory-service", "/inventory");
     }
 
     @Bean("orderWebClient")
     public WebClient webClientOrderService(WebClient.Builder webClientBuilder) {
-        ServiceInstance instance = getServiceInstance("ecom-order-service");
-        String hostname = instance.getHost();
-        int port = instance.getPort();
-
-        return webClientBuilder
-                .baseUrl("http://" + hostname + ":" + port + "/orders")
-                .filter(new LoggingWebClientFilter())
-                .build();
+        return downstreamWebClient(webClientBuilder, "ecom-order-service", "/orders");
     }
 
     @Bean("paymentWebClient")
     public WebClient webClientPaymentService(WebClient.Builder webClientBuilder) {
-        ServiceInstance instance = getServiceInstance("ecom-payment-service");
-        String hostname = instance.getHost();
-        int port = instance.getPort();
+        return downstreamWebClient(webClientBuilder, "ecom-payment-service", "/payments");
+    }
 
+    // THE BASE URL CARRIES THE SERVICE NAME, THE LOAD BALANCING FILTER SWAPS IN A LIVE INSTANCE PER REQUEST
+    private WebClient downstreamWebClient(WebClient.Builder webClientBuilder, String serviceName, String basePath) {
+        serviceInstanceRegistry.track(serviceName);
         return webClientBuilder
-                .baseUrl("http://" + hostname + ":" + port + "/payments")
-                .filter(new LoggingWebClientFilter())
+                .baseUrl("http://" + serviceName + basePath)
+                .clientConnector(downstreamConnectorFactory.connector(serviceName))
+                .filter(new DownstreamMetricsFilter(serviceName, meterRegistry, downstreamSlos, downstreamLogSampleRate))
+                .filter(downstreamResilience.filter(serviceName))
+                .filter(new LoadBalancingExchangeFilter(serviceName, serviceInstanceRegistry, LoadBalancerStrategy.named(loadBalancerStrategy)))
                 .build();
     }
 
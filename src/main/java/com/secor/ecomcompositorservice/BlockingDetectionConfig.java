@@ -0,0 +1,35 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@Configuration
+public class BlockingDetectionConfig {
+
+    // JPA BORROWS A JDBC CONNECTION FOR EVERY STATEMENT, SO THIS CATCHES ANY REPOSITORY CALL MADE ON AN EVENT LOOP
+    @Bean
+    public static BeanPostProcessor blockingDataSourceGuard(ObjectProvider<BlockingExecution> blockingExecution) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource)) {
+                    return bean;
+                }
+                return new DelegatingDataSource(dataSource) {
+                    @Override
+                    public Connection getConnection() throws SQLException {
+                        blockingExecution.ifAvailable(execution -> execution.checkBlockingAllowed("jdbc"));
+                        return super.getConnection();
+                    }
+                };
+            }
+        };
+    }
+}
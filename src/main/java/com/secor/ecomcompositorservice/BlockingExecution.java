@@ -0,0 +1,120 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the blocking integrations (Jedis, JPA) run when called from a reactive pipeline. With
+ * spring.threads.virtual.enabled=true on Java 21 every call gets its own virtual thread; otherwise, or on
+ * Java 17, they share Reactor's bounded elastic pool.
+ * <p>
+ * The same integrations call {@link #checkBlockingAllowed} before they touch the network, which catches
+ * anything that still reaches them on an event-loop or parallel thread: it is counted, logged and, with
+ * compositor.blocking.strict=true, refused.
+ */
+@Component
+public class BlockingExecution {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockingExecution.class);
+
+    private final Scheduler scheduler;
+    private final ExecutorService virtualThreads;
+    private final boolean strict;
+    private final MeterRegistry meterRegistry;
+    private final Timer calls;
+    private final Map<String, Counter> violations = new ConcurrentHashMap<>();
+
+    public BlockingExecution(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsEnabled,
+                             @Value("${compositor.blocking.strict:false}") boolean strict,
+                             MeterRegistry meterRegistry) {
+        this.strict = strict;
+        this.meterRegistry = meterRegistry;
+        this.virtualThreads = virtualThreadsEnabled ? newVirtualThreadPerTaskExecutor() : null;
+        this.scheduler = virtualThreads != null
+                ? Schedulers.fromExecutorService(virtualThreads, "compositor-virtual")
+                : Schedulers.boundedElastic();
+        this.calls = Timer.builder("compositor.blocking.calls")
+                .description("Blocking calls offloaded from reactive pipelines")
+                .tag("executor", virtualThreads != null ? "virtual" : "bounded-elastic")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> call(Callable<T> blockingCall) {
+        return Mono.fromCallable(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        return blockingCall.call();
+                    } finally {
+                        calls.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                })
+                .subscribeOn(scheduler);
+    }
+
+    public Mono<Void> run(Runnable blockingCall) {
+        return call(() -> {
+            blockingCall.run();
+            return null;
+        }).then();
+    }
+
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Called by a blocking integration right before it blocks.
+     */
+    public void checkBlockingAllowed(String resource) {
+        if (!Schedulers.isInNonBlockingThread()) {
+            return;
+        }
+        violations.computeIfAbsent(resource, key -> Counter.builder("compositor.blocking.violations")
+                .description("Blocking calls made on a thread that must not block")
+                .tag("resource", key)
+                .register(meterRegistry)).increment();
+        String message = "Blocking " + resource + " call on non-blocking thread " + Thread.currentThread().getName();
+        if (strict) {
+            throw new IllegalStateException(message);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(message, new Exception("call site"));
+        } else {
+            LOG.warn(message);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (virtualThreads != null) {
+            scheduler.dispose();
+        }
+    }
+
+    // THE BUILD TARGETS JAVA 17, SO THE JAVA 21 FACTORY IS LOOKED UP RATHER THAN LINKED
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("Virtual threads need Java 21 (running {}), blocking calls stay on the bounded elastic scheduler",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.secor.ecomcompositorservice;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter @Setter
+public class BulkOrderRequest {
+    private Long customerId;
+    private List<Line> lines;
+
+    @Getter @Setter
+    public static class Line {
+        private Long productId;
+        private Integer quantity;
+    }
+}
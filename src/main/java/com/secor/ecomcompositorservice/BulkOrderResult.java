@@ -0,0 +1,18 @@
+package com.secor.ecomcompositorservice;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Outcome of one line of a bulk order, streamed back as soon as that line is done. {@code line} is the
+ * line's position in the request, since lines finish in any order.
+ */
+@Getter @Setter
+public class BulkOrderResult {
+    private int line;
+    private Long productId;
+    private Integer quantity;
+    private Long orderId;
+    private String status;
+    private String message;
+}
@@ -0,0 +1,18 @@
+package com.secor.ecomcompositorservice;
+
+public enum CachedView {
+
+    CATALOG("catalog"),
+    PRODUCT("product"),
+    INVENTORY("inventory");
+
+    private final String namespace;
+
+    CachedView(String namespace) {
+        this.namespace = namespace;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+}
@@ -0,0 +1,173 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Sparse fieldsets for the catalog endpoints: {@code fields=productId,price,quantity} keeps only those
+ * properties of each row. A bare name is looked up on the product first, then the inventory;
+ * {@code inventory.productId} or a whole {@code product} can be asked for explicitly. Rows are written by a
+ * Jackson filter that skips the other properties as it goes, so no trimmed copy of a row is ever built.
+ */
+@Component
+public class CatalogFields {
+
+    private static final String FILTER_ID = "catalogFields";
+
+    private final ObjectMapper projectingMapper;
+    private final Set<String> productProperties;
+    private final Set<String> inventoryProperties;
+    // A POPULAR PROJECTION OF THE WHOLE CATALOG IS ENCODED ONCE PER SNAPSHOT VERSION
+    private final Cache<String, byte[]> encodedCatalogs;
+
+    public CatalogFields(ObjectMapper objectMapper,
+                         @Value("${compositor.catalog.fields.cache-size:16}") long cacheSize) {
+        // THE MIX-INS ONLY EXIST ON THIS COPY, SO EVERY OTHER WRITER OF THESE VIEWS IS UNAFFECTED
+        this.projectingMapper = objectMapper.copy()
+                .addMixIn(ProductCatalogView.class, Filtered.class)
+                .addMixIn(ProductView.class, Filtered.class)
+                .addMixIn(InventoryView.class, Filtered.class);
+        this.productProperties = properties(ProductView.class);
+        this.inventoryProperties = properties(InventoryView.class);
+        this.encodedCatalogs = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    private Set<String> properties(Class<?> type) {
+        return projectingMapper.getSerializationConfig()
+                .introspect(projectingMapper.constructType(type))
+                .findProperties().stream()
+                .map(BeanPropertyDefinition::getName)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Null when every field is wanted. Unknown names are refused with 400 rather than silently dropped.
+     */
+    public Projection parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<String> product = new TreeSet<>();
+        Set<String> inventory = new TreeSet<>();
+        boolean wholeProduct = false;
+        boolean wholeInventory = false;
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (name.equals("product")) {
+                wholeProduct = true;
+            } else if (name.equals("inventory")) {
+                wholeInventory = true;
+            } else if (name.startsWith("product.") && productProperties.contains(name.substring(8))) {
+                product.add(name.substring(8));
+            } else if (name.startsWith("inventory.") && inventoryProperties.contains(name.substring(10))) {
+                inventory.add(name.substring(10));
+            } else if (productProperties.contains(name)) {
+                product.add(name);
+            } else if (inventoryProperties.contains(name)) {
+                inventory.add(name);
+            } else {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field: " + name);
+            }
+        }
+        return new Projection(wholeProduct ? null : product, wholeInventory ? null : inventory);
+    }
+
+    public String write(ProductCatalogView row, Projection projection) {
+        try {
+            return projection.writer.writeValueAsString(row);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode catalog row", e);
+        }
+    }
+
+    public byte[] write(List<ProductCatalogView> rows, Projection projection) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows.size() * 64);
+        try (JsonGenerator generator = projectingMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            for (ProductCatalogView row : rows) {
+                projection.writer.writeValue(generator, row);
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode catalog rows", e);
+        }
+        return out.toByteArray();
+    }
+
+    public byte[] write(CatalogSnapshot.Snapshot snapshot, Projection projection) {
+        return encodedCatalogs.get(etag(snapshot, projection), key -> write(snapshot.rows(), projection));
+    }
+
+    // THE SNAPSHOT'S OWN ETAG WITH THE FIELDSET FOLDED IN, SO EACH PROJECTION REVALIDATES ON ITS OWN
+    public String etag(CatalogSnapshot.Snapshot snapshot, Projection projection) {
+        String etag = snapshot.etag();
+        return etag.substring(0, etag.length() - 1) + "-" + projection.key + "\"";
+    }
+
+    @JsonFilter(FILTER_ID)
+    private interface Filtered {
+    }
+
+    public final class Projection {
+
+        // NULL MEANS THE WHOLE OBJECT, EMPTY MEANS NONE OF IT
+        private final Set<String> product;
+        private final Set<String> inventory;
+        private final String key;
+        private final ObjectWriter writer;
+
+        private Projection(Set<String> product, Set<String> inventory) {
+            this.product = product;
+            this.inventory = inventory;
+            this.key = DigestUtils.md5DigestAsHex((product + "|" + inventory).getBytes(StandardCharsets.UTF_8)).substring(0, 8);
+            this.writer = projectingMapper.writer(new SimpleFilterProvider().addFilter(FILTER_ID, new Filter()));
+        }
+
+        private boolean includes(Object bean, String name) {
+            if (bean instanceof ProductCatalogView) {
+                return name.equals("product") ? product == null || !product.isEmpty() : inventory == null || !inventory.isEmpty();
+            }
+            if (bean instanceof ProductView) {
+                return product == null || product.contains(name);
+            }
+            return inventory == null || inventory.contains(name);
+        }
+
+        private class Filter extends SimpleBeanPropertyFilter {
+
+            @Override
+            public void serializeAsField(Object bean, JsonGenerator generator, SerializerProvider provider, PropertyWriter writer) throws Exception {
+                if (includes(bean, writer.getName())) {
+                    writer.serializeAsField(bean, generator, provider);
+                } else if (!generator.canOmitFields()) {
+                    writer.serializeAsOmittedField(bean, generator, provider);
+                }
+            }
+        }
+    }
+}
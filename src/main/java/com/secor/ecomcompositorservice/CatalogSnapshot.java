@@ -0,0 +1,439 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The product x inventory join, materialised. It is built once at startup (or taken from the copy another
+ * node left in the shared store), patched as inventory changes and rebuilt from scratch only on a schedule.
+ * Readers get an immutable {@link Snapshot}; inventory changes are collected and installed as one new
+ * snapshot per patch tick, so a burst of orders costs one copy of the catalog rather than one each.
+ */
+@Component
+public class CatalogSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CatalogSnapshot.class);
+
+    @Autowired
+    @Qualifier("catalogWebClient")
+    WebClient catalogWebClient;
+
+    @Autowired
+    @Qualifier("orderWebClient")
+    WebClient orderWebClient;
+
+    @Autowired
+    InventoryBatchLoader inventoryBatchLoader;
+
+    @Autowired
+    ReservationStore reservationStore;
+
+    @Autowired
+    ViewStore viewStore;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    ViewCache viewCache;
+
+    @Value("${compositor.catalog.snapshot.enabled:true}")
+    boolean enabled = true;
+
+    @Value("${compositor.catalog.snapshot.shared-ttl:1h}")
+    Duration sharedTtl = Duration.ofHours(1);
+
+    @Value("${compositor.cache.key-prefix:compositor:v1}")
+    String keyPrefix = "compositor:v1";
+
+    // THE SHARED COPY IS SMILE, LIKE THE VIEW CACHE ENTRIES
+    private final ObjectMapper codec = new ObjectMapper(new SmileFactory())
+            .registerModule(new JavaTimeModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    // GUARDS THE TWO MAPS BELOW AND EVERY SNAPSHOT INSTALL, SO A PATCH CAN NOT SLIP BETWEEN A REBUILD'S REPLAY AND ITS PUBLISH
+    private final Object installLock = new Object();
+    // INVENTORY CHANGES WAITING FOR THE NEXT PATCH TICK, LATEST PER INVENTORY ROW
+    private final Map<Long, InventoryView> pendingChanges = new LinkedHashMap<>();
+    // INVENTORY CHANGES APPLIED WHILE A REBUILD IS RUNNING, REPLAYED ON TOP OF IT SO THEY ARE NOT LOST
+    private final Map<Long, InventoryView> changesDuringRebuild = new LinkedHashMap<>();
+    private volatile boolean rebuilding;
+    private final AtomicBoolean scheduledRebuildRunning = new AtomicBoolean();
+
+    private final Timer rebuilds;
+    private final Counter patches;
+
+    public CatalogSnapshot(MeterRegistry meterRegistry) {
+        this.rebuilds = Timer.builder("compositor.catalog.snapshot.rebuild").description("Full rebuilds of the catalog snapshot").register(meterRegistry);
+        this.patches = Counter.builder("compositor.catalog.snapshot.patches").description("Inventory changes applied to the catalog snapshot").register(meterRegistry);
+        Gauge.builder("compositor.catalog.snapshot.rows", current, ref -> ref.get() == null ? 0 : ref.get().rows().size())
+                .description("Rows in the catalog snapshot being served")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The snapshot being served, or null until the first one is built.
+     */
+    public Snapshot current() {
+        return enabled ? current.get() : null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        loadShared()
+                .switchIfEmpty(Mono.defer(this::rebuild))
+                .subscribe(null, error -> LOG.warn("Could not build the catalog snapshot, serving live joins until the next rebuild: {}", error.toString()));
+    }
+
+    @Scheduled(fixedDelayString = "${compositor.catalog.snapshot.rebuild-interval-ms:300000}",
+            initialDelayString = "${compositor.catalog.snapshot.rebuild-interval-ms:300000}")
+    // THE REBUILD RUNS ON THE WEBCLIENT THREADS, NOT THE SCHEDULER'S, SO IT NEVER HOLDS UP THE OTHER @SCHEDULED TASKS
+    public void reconcile() {
+        if (!enabled || !scheduledRebuildRunning.compareAndSet(false, true)) {
+            return;
+        }
+        rebuild().doFinally(signal -> scheduledRebuildRunning.set(false))
+                .subscribe(null, error -> LOG.warn("Catalog snapshot rebuild failed, keeping the current one: {}", error.toString()));
+    }
+
+    public Mono<Snapshot> rebuild() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            synchronized (installLock) {
+                changesDuringRebuild.clear();
+                rebuilding = true;
+            }
+            return inventoryBatchLoader.joinInventory(catalogWebClient.get().retrieve().bodyToFlux(ProductView.class))
+                    .collectList()
+                    .map(rows -> {
+                        Snapshot previous = current.get();
+                        Snapshot built;
+                        synchronized (installLock) {
+                            built = new Snapshot(sorted(rows)).withInventories(changesDuringRebuild);
+                            changesDuringRebuild.clear();
+                            current.set(built);
+                            rebuilding = false;
+                        }
+                        rebuilds.record(Duration.ofNanos(System.nanoTime() - start));
+                        LOG.info("Catalog snapshot rebuilt with {} rows", built.rows().size());
+                        evictChangedProducts(previous, built);
+                        return built;
+                    })
+                    .doOnNext(this::storeShared)
+                    .doFinally(signal -> rebuilding = false);
+        });
+    }
+
+    /**
+     * Queues an inventory row that was just written; the next patch tick applies it, so readers see it
+     * without a rebuild.
+     */
+    public void updateInventory(InventoryView inventory) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (installLock) {
+            pendingChanges.put(inventory.getInventoryId(), inventory);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${compositor.catalog.snapshot.patch-interval-ms:200}")
+    public void applyPatches() {
+        synchronized (installLock) {
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+            if (rebuilding) {
+                changesDuringRebuild.putAll(pendingChanges);
+            }
+            Snapshot snapshot = current.get();
+            if (snapshot != null) {
+                Snapshot patched = snapshot.withInventories(pendingChanges);
+                if (patched != snapshot) {
+                    current.set(patched);
+                    patches.increment(pendingChanges.size());
+                }
+            }
+            pendingChanges.clear();
+        }
+    }
+
+    // A COMPLETED ORDER ON ANY NODE CHANGES STOCK; THE RESERVATION STORE ALREADY HOLDS THE RESULTING FIGURE.
+    // EVERY NODE NEEDS EVERY EVENT FROM NOW ON, SO ALL PARTITIONS ARE ASSIGNED DIRECTLY FROM THE END, WITH NO
+    // CONSUMER GROUP AND NO COMMITTED OFFSETS LEFT BEHIND
+    @KafkaListener(topicPartitions = @TopicPartition(topic = OrderEventOutbox.ORDER_EVENTS_TOPIC,
+                    partitionOffsets = @PartitionOffset(partition = "*", initialOffset = "0", seekPosition = "END")),
+            autoStartup = "${compositor.catalog.snapshot.kafka.enabled:true}")
+    public void onOrderEvent(String payload) {
+        Analytic event;
+        try {
+            event = objectMapper.readValue(payload, Analytic.class);
+        } catch (JsonProcessingException e) {
+            LOG.warn("Ignoring unreadable order event: {}", e.toString());
+            return;
+        }
+        Snapshot snapshot = current();
+        if (snapshot == null || !"ORDER COMPLETED".equals(event.getDescription())) {
+            return;
+        }
+        orderWebClient.get().uri("/{id}", Long.valueOf(event.getPrincipal())).retrieve().bodyToMono(OrderView.class)
+                .flatMap(order -> reservationStore.onHand(order.getProductId())
+                        .doOnNext(onHand -> snapshot.firstInventory(order.getProductId()).ifPresent(inventory -> {
+                            InventoryView updated = new InventoryView();
+                            updated.setInventoryId(inventory.getInventoryId());
+                            updated.setProductId(inventory.getProductId());
+                            updated.setQuantity(onHand.intValue());
+                            updated.setLastUpdated(inventory.getLastUpdated());
+                            updateInventory(updated);
+                        })))
+                .subscribe(null, error -> LOG.warn("Could not apply order event for {} to the catalog snapshot: {}", event.getPrincipal(), error.toString()));
+    }
+
+    // THE REBUILD IS WHERE THIS SERVICE SEES PRODUCT EDITS, SO IT DROPS THE CACHED PRODUCT AND CATALOG VIEWS
+    // THAT CHANGED; THE EVICTION IS BROADCAST, SO EVERY NODE'S NEAR CACHE LETS GO OF THEM TOO
+    private void evictChangedProducts(Snapshot previous, Snapshot built) {
+        if (previous == null) {
+            return;
+        }
+        Map<Long, ProductView> before = previous.products();
+        Map<Long, ProductView> after = built.products();
+        Set<Long> changed = new HashSet<>();
+        before.forEach((productId, product) -> {
+            if (!sameProduct(product, after.get(productId))) {
+                changed.add(productId);
+            }
+        });
+        after.keySet().stream().filter(productId -> !before.containsKey(productId)).forEach(changed::add);
+        if (changed.isEmpty()) {
+            return;
+        }
+        LOG.info("Catalog rebuild found {} changed products, evicting their cached views", changed.size());
+        Flux.fromIterable(changed)
+                .flatMap(productId -> viewCache.evict(CachedView.PRODUCT, productId))
+                .then(viewCache.evict(CachedView.CATALOG, "all"))
+                .subscribe(null, error -> LOG.warn("Could not evict changed products: {}", error.toString()));
+    }
+
+    private static boolean sameProduct(ProductView a, ProductView b) {
+        return b != null
+                && Objects.equals(a.getProductName(), b.getProductName())
+                && Objects.equals(a.getDescription(), b.getDescription())
+                && (a.getPrice() == null ? b.getPrice() == null : b.getPrice() != null && a.getPrice().compareTo(b.getPrice()) == 0)
+                && Objects.equals(a.getCategory(), b.getCategory())
+                && Objects.equals(a.getUpdatedAt(), b.getUpdatedAt());
+    }
+
+    private Mono<Snapshot> loadShared() {
+        JavaType type = codec.getTypeFactory().constructCollectionType(List.class, ProductCatalogView.class);
+        return viewStore.get(sharedKey())
+                .<Snapshot>handle((bytes, sink) -> {
+                    try {
+                        List<ProductCatalogView> rows = codec.readValue(bytes, type);
+                        sink.next(new Snapshot(rows));
+                    } catch (IOException e) {
+                        LOG.warn("Ignoring undecodable shared catalog snapshot: {}", e.toString());
+                        sink.complete();
+                    }
+                })
+                .doOnNext(loaded -> {
+                    current.compareAndSet(null, loaded);
+                    LOG.info("Catalog snapshot loaded from the shared store with {} rows", loaded.rows().size());
+                })
+                .onErrorResume(error -> Mono.empty());
+    }
+
+    private void storeShared(Snapshot snapshot) {
+        byte[] bytes;
+        try {
+            bytes = codec.writeValueAsBytes(snapshot.rows());
+        } catch (IOException e) {
+            LOG.warn("Could not encode the catalog snapshot: {}", e.toString());
+            return;
+        }
+        viewStore.set(sharedKey(), bytes, sharedTtl)
+                .subscribe(null, error -> LOG.warn("Could not share the catalog snapshot: {}", error.toString()));
+    }
+
+    private String sharedKey() {
+        return keyPrefix + ":" + CachedView.CATALOG.getNamespace() + ":snapshot";
+    }
+
+    private static List<ProductCatalogView> sorted(List<ProductCatalogView> rows) {
+        List<ProductCatalogView> copy = new ArrayList<>(rows);
+        copy.sort(Comparator.comparing((ProductCatalogView row) -> row.getProduct().getProductId())
+                .thenComparing(row -> row.getInventory().getInventoryId(), Comparator.nullsFirst(Comparator.naturalOrder())));
+        return List.copyOf(copy);
+    }
+
+    public static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One immutable version of the catalog, ordered by product ID. Its JSON form and ETag are computed once,
+     * on the first request that needs them.
+     */
+    public final class Snapshot {
+
+        private final List<ProductCatalogView> rows;
+        private volatile byte[] json;
+        private volatile String etag;
+
+        Snapshot(List<ProductCatalogView> rows) {
+            this.rows = rows;
+        }
+
+        public List<ProductCatalogView> rows() {
+            return rows;
+        }
+
+        public byte[] json() {
+            if (json == null) {
+                try {
+                    byte[] encoded = objectMapper.writeValueAsBytes(rows);
+                    etag = "\"" + DigestUtils.md5DigestAsHex(encoded) + "\"";
+                    json = encoded;
+                } catch (JsonProcessingException e) {
+                    throw new IllegalStateException("Could not encode the catalog snapshot", e);
+                }
+            }
+            return json;
+        }
+
+        // A CONTENT HASH, SO EVERY NODE SERVING THE SAME CATALOG HANDS OUT THE SAME ETAG
+        public String etag() {
+            json();
+            return etag;
+        }
+
+        public boolean matches(String ifNoneMatch) {
+            return etagMatches(ifNoneMatch, etag());
+        }
+
+        /**
+         * Rows for up to {@code pageSize} products after the cursor, like the live paged join.
+         */
+        public List<ProductCatalogView> page(Long after, int pageSize) {
+            int from = after == null ? 0 : firstAfter(after);
+            List<ProductCatalogView> page = new ArrayList<>();
+            Long lastProduct = null;
+            int products = 0;
+            for (int i = from; i < rows.size(); i++) {
+                Long productId = rows.get(i).getProduct().getProductId();
+                if (!productId.equals(lastProduct)) {
+                    if (products == pageSize) {
+                        break;
+                    }
+                    products++;
+                    lastProduct = productId;
+                }
+                page.add(rows.get(i));
+            }
+            return page;
+        }
+
+        Map<Long, ProductView> products() {
+            Map<Long, ProductView> products = new HashMap<>();
+            for (ProductCatalogView row : rows) {
+                products.putIfAbsent(row.getProduct().getProductId(), row.getProduct());
+            }
+            return products;
+        }
+
+        Optional<InventoryView> firstInventory(Long productId) {
+            int index = firstAfter(productId - 1);
+            return index < rows.size() && rows.get(index).getProduct().getProductId().equals(productId)
+                    ? Optional.of(rows.get(index).getInventory())
+                    : Optional.empty();
+        }
+
+        /**
+         * A copy with the given inventory rows (keyed by inventory ID) swapped in, or this snapshot when
+         * none of them is part of it. The rows are found by product ID, and the list is copied once.
+         */
+        Snapshot withInventories(Map<Long, InventoryView> inventories) {
+            ProductCatalogView[] patched = null;
+            for (InventoryView inventory : inventories.values()) {
+                for (int i = firstAfter(inventory.getProductId() - 1); i < rows.size()
+                        && rows.get(i).getProduct().getProductId().equals(inventory.getProductId()); i++) {
+                    if (rows.get(i).getInventory().getInventoryId().equals(inventory.getInventoryId())) {
+                        if (patched == null) {
+                            patched = rows.toArray(new ProductCatalogView[0]);
+                        }
+                        ProductCatalogView row = new ProductCatalogView();
+                        row.setProduct(rows.get(i).getProduct());
+                        row.setInventory(inventory);
+                        patched[i] = row;
+                    }
+                }
+            }
+            return patched == null ? this : new Snapshot(List.of(patched));
+        }
+
+        private int firstAfter(long productId) {
+            int low = 0;
+            int high = rows.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (rows.get(mid).getProduct().getProductId() <= productId) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -1,19 +1,31 @@
 package com.secor.ecomcompositorservice;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @RestController
 @RequestMapping("/api/v1")
@@ -22,10 +34,43 @@ public class CompositorController {
     private static final Logger LOG = LoggerFactory.getLogger(CompositorController.class);
 
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    ViewCache viewCache;
 
     @Autowired
-    Producer producer;
+    SingleFlight singleFlight;
+
+    @Autowired
+    OrderEventOutbox orderEventOutbox;
+
+    @Autowired
+    InventoryBatchLoader inventoryBatchLoader;
+
+    @Autowired
+    InventoryReservations inventoryReservations;
+
+    @Autowired
+    Idempotency idempotency;
+
+    @Autowired
+    CustomerDirectory customerDirectory;
+
+    @Autowired
+    CatalogSnapshot catalogSnapshot;
+
+    @Autowired
+    OrderCommands orderCommands;
+
+    @Autowired
+    CatalogFields catalogFields;
+
+    @Value("${compositor.catalog.max-page-size:500}")
+    int maxPageSize = 500;
+
+    @Value("${compositor.orders.bulk.max-lines:200}")
+    int maxBulkLines = 200;
+
+    @Value("${compositor.orders.bulk.concurrency:8}")
+    int bulkConcurrency = 8;
 
     @Autowired
     @Qualifier("catalogWebClient")
@@ -44,183 +89,422 @@ public class CompositorController {
     WebClient paymentWebClient;
 
     public Flux<ProductView> getProducts() {
-        LOG.info("getProducts");
-        return catalogWebClient.get().retrieve().bodyToFlux(ProductView.class);
+        LOG.debug("getProducts");
+        return viewCache.getList(CachedView.CATALOG, "all", ProductView.class,
+                () -> catalogWebClient.get().retrieve().bodyToFlux(ProductView.class));
     }
 
     public Mono<ProductView> getProductDetail(Long productId) {
-        LOG.info("getProductDetail");
-        return catalogWebClient.get().uri("/" + productId).retrieve().bodyToMono(ProductView.class);
+        LOG.debug("getProductDetail");
+        // CONCURRENT LOOKUPS OF ONE PRODUCT SHARE A SINGLE CACHE READ AND, ON A MISS, A SINGLE CATALOG CALL
+        return singleFlight.mono("product", productId, () -> viewCache.get(CachedView.PRODUCT, productId, ProductView.class,
+                () -> catalogWebClient.get().uri("/{id}", productId).retrieve().bodyToMono(ProductView.class)));
     }
 
     public Flux<InventoryView> getInventory(Long productId) {
-        LOG.info("getInventory");
-        return inventoryWebClient.get().uri("/" + productId).retrieve().bodyToFlux(InventoryView.class);
+        LOG.debug("getInventory");
+        return singleFlight.flux("inventory", productId, () -> viewCache.getList(CachedView.INVENTORY, productId, InventoryView.class,
+                () -> inventoryWebClient.get().uri("/{id}", productId).retrieve().bodyToFlux(InventoryView.class)));
     }
 
     public Mono<OrderView> postOrder(OrderView order) {
-        LOG.info("postOrder");
+        LOG.debug("postOrder");
         return orderWebClient.post().body(Mono.just(order), OrderView.class).retrieve().bodyToMono(OrderView.class);
     }
 
     public Mono<PaymentView> postPayment(PaymentView payment) {
-        LOG.info("postPayment");
+        LOG.debug("postPayment");
         return paymentWebClient.post().body(Mono.just(payment), PaymentView.class).retrieve().bodyToMono(PaymentView.class);
     }
 
     public Mono<PaymentView> putPayment(Long paymentId, PaymentView payment) {
-        LOG.info("putPayment");
-        return paymentWebClient.put().uri("/" + paymentId).body(Mono.just(payment), PaymentView.class).retrieve().bodyToMono(PaymentView.class);
-    }
-
-    public Mono<InventoryView> putInventory(Long inventoryId, InventoryView inventory) {
-        LOG.info("putInventory");
-        return inventoryWebClient.put().uri("/" + inventoryId).body(Mono.just(inventory), InventoryView.class).retrieve().bodyToMono(InventoryView.class);
+        LOG.debug("putPayment");
+        return paymentWebClient.put().uri("/{id}", paymentId).body(Mono.just(payment), PaymentView.class).retrieve().bodyToMono(PaymentView.class);
     }
 
     public Mono<OrderView> getOrder(Long orderId) {
-        LOG.info("getOrder");
-        return orderWebClient.get().uri("/" + orderId).retrieve().bodyToMono(OrderView.class);
+        LOG.debug("getOrder");
+        return singleFlight.mono("order", orderId, () -> orderWebClient.get().uri("/{id}", orderId).retrieve().bodyToMono(OrderView.class));
     }
 
     public Mono<OrderView> putOrder(Long orderId, OrderView order) {
-        LOG.info("putOrder");
-        return orderWebClient.put().uri("/" + orderId).body(Mono.just(order), OrderView.class).retrieve().bodyToMono(OrderView.class);
+        LOG.debug("putOrder");
+        return orderWebClient.put().uri("/{id}", orderId).body(Mono.just(order), OrderView.class).retrieve().bodyToMono(OrderView.class)
+                .flatMap(saved -> viewCache.evict(CachedView.INVENTORY, order.getProductId()).thenReturn(saved));
     }
 
     public Mono<PaymentView> getPayment(Long orderId) {
-        LOG.info("getPayment");
-        return paymentWebClient.get().uri("/order/" + orderId).retrieve().bodyToMono(PaymentView.class);
+        LOG.debug("getPayment");
+        return paymentWebClient.get().uri("/order/{orderId}", orderId).retrieve().bodyToMono(PaymentView.class);
+    }
+
+    public Flux<ProductView> getProductsPage(Long after, int pageSize) {
+        LOG.debug("getProductsPage");
+        // THE CATALOG IS ORDERED BY PRODUCT ID; FILTERING HERE TOO KEEPS THE CURSOR CORRECT IF IT IGNORES THE PARAMETERS
+        return catalogWebClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .queryParamIfPresent("after", Optional.ofNullable(after))
+                        .queryParam("limit", pageSize)
+                        .build())
+                .retrieve()
+                .bodyToFlux(ProductView.class)
+                .filter(product -> after == null || product.getProductId() > after)
+                .take(pageSize);
     }
 
     @GetMapping(value = "productCatalog")
+    public Mono<ResponseEntity<?>> getProductsAndInventories(@RequestParam(required = false) Long after, @RequestParam(required = false) Integer limit,
+                                                             @RequestParam(required = false) String fields,
+                                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        LOG.debug("getProductsAndInventories");
+        CatalogFields.Projection projection = catalogFields.parse(fields);
+        if (after != null || limit != null) {
+            return catalogPageWithCursor(after, limit).map(page -> {
+                ResponseEntity<?> response = catalogResponse(page.rows(), projection);
+                if (page.next() == null) {
+                    return response;
+                }
+                // A rel="next" LINK CARRIES THE CURSOR; THE LAST PAGE HAS NONE
+                String next = UriComponentsBuilder.fromPath("/api/v1/productCatalog")
+                        .queryParam("after", page.next())
+                        .queryParam("limit", pageSize(limit))
+                        .queryParamIfPresent("fields", Optional.ofNullable(fields))
+                        .encode()
+                        .toUriString();
+                return ResponseEntity.status(response.getStatusCode())
+                        .headers(response.getHeaders())
+                        .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                        .body(response.getBody());
+            });
+        }
+        CatalogSnapshot.Snapshot snapshot = catalogSnapshot.current();
+        if (snapshot == null) {
+            return getProductsAndInventories().collectList().map(rows -> catalogResponse(rows, projection));
+        }
+        // THE WHOLE CATALOG IS SENT AS PRE-ENCODED BYTES, OR NOT AT ALL IF THE CLIENT ALREADY HAS THIS VERSION
+        String etag = projection == null ? snapshot.etag() : catalogFields.etag(snapshot, projection);
+        if (CatalogSnapshot.etagMatches(ifNoneMatch, etag)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build());
+        }
+        byte[] body = projection == null ? snapshot.json() : catalogFields.write(snapshot, projection);
+        return Mono.just(ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON).body(body));
+    }
+
+    private ResponseEntity<?> catalogResponse(List<ProductCatalogView> rows, CatalogFields.Projection projection) {
+        if (projection == null) {
+            return ResponseEntity.ok(rows);
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(catalogFields.write(rows, projection));
+    }
+
+    // STREAMING CLIENTS GET EACH ROW AS SOON AS ITS INVENTORY IS JOINED, NOT AFTER THE WHOLE ARRAY IS BUILT
+    @GetMapping(value = "productCatalog", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<?> streamProductCatalog(@RequestParam(required = false) Long after, @RequestParam(required = false) Integer limit,
+                                        @RequestParam(required = false) String fields) {
+        LOG.debug("streamProductCatalog");
+        CatalogFields.Projection projection = catalogFields.parse(fields);
+        // A PROJECTED ROW IS ALREADY JSON, SO IT GOES OUT AS A STRING
+        return projection == null ? catalogStream(after, limit) : catalogStream(after, limit).map(row -> catalogFields.write(row, projection));
+    }
+
+    @GetMapping(value = "productCatalog", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<?>> streamProductCatalogEvents(@RequestParam(required = false) Long after,
+                                                               @RequestParam(required = false) Integer limit,
+                                                               @RequestParam(required = false) String fields,
+                                                               @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        LOG.debug("streamProductCatalogEvents");
+        CatalogFields.Projection projection = catalogFields.parse(fields);
+        // THE EVENT ID IS productId:inventoryId, SO A RECONNECTING EVENTSOURCE RESUMES AFTER THE LAST ROW IT GOT,
+        // EVEN HALFWAY THROUGH THE ROWS OF ONE PRODUCT
+        Flux<ProductCatalogView> rows = after == null && lastEventId != null ? catalogRowsAfter(lastEventId, limit) : catalogStream(after, limit);
+        return rows.map(catalogView -> ServerSentEvent.builder(projection == null ? catalogView : catalogFields.write(catalogView, projection))
+                .id(catalogView.getProduct().getProductId() + ":" + catalogView.getInventory().getInventoryId())
+                .event("product")
+                .build());
+    }
+
+    private Flux<ProductCatalogView> catalogRowsAfter(String eventId, Integer limit) {
+        try {
+            int separator = eventId.indexOf(':');
+            if (separator < 0) {
+                return catalogStream(Long.valueOf(eventId.trim()), limit);
+            }
+            Long productId = Long.valueOf(eventId.substring(0, separator).trim());
+            Long inventoryId = Long.valueOf(eventId.substring(separator + 1).trim());
+            // ROWS OF ONE PRODUCT COME OUT IN INVENTORY ID ORDER, SO THE ONES ALREADY SENT ARE A PREFIX
+            return catalogStream(productId - 1, limit)
+                    .skipWhile(row -> row.getProduct().getProductId().equals(productId) && row.getInventory().getInventoryId() <= inventoryId);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed Last-Event-ID: " + eventId);
+        }
+    }
+
+    // ROWS PLUS THE CURSOR OF THE NEXT PAGE, WHICH IS NULL ON THE LAST ONE
+    private record CatalogPage(List<ProductCatalogView> rows, Long next) {
+    }
+
+    private Mono<CatalogPage> catalogPageWithCursor(Long after, Integer limit) {
+        int pageSize = pageSize(limit);
+        CatalogSnapshot.Snapshot snapshot = catalogSnapshot.current();
+        if (snapshot != null) {
+            List<ProductCatalogView> rows = snapshot.page(after, pageSize);
+            long products = rows.stream().map(row -> row.getProduct().getProductId()).distinct().count();
+            return Mono.just(new CatalogPage(rows, products == pageSize ? rows.get(rows.size() - 1).getProduct().getProductId() : null));
+        }
+        // THE CURSOR FOLLOWS THE PRODUCTS FETCHED RATHER THAN THE ROWS, SINCE A PRODUCT WITHOUT INVENTORY HAS NO ROW
+        return getProductsPage(after, pageSize).collectList()
+                .flatMap(products -> inventoryBatchLoader.joinInventory(Flux.fromIterable(products)).collectList()
+                        .map(rows -> new CatalogPage(rows, products.size() == pageSize ? products.get(products.size() - 1).getProductId() : null)));
+    }
+
+    // SERVED FROM THE SNAPSHOT ONCE THERE IS ONE; THE LIVE JOIN ONLY COVERS THE FIRST MOMENTS AFTER STARTUP.
+    // WITHOUT A LIMIT A STREAM CARRIES THE WHOLE CATALOG FROM THE CURSOR ON: THE PAGE CAP IS FOR JSON, WHICH
+    // LINKS ITS NEXT PAGE, WHEREAS A STREAM HAS NO WAY TO SAY IT STOPPED SHORT
+    private Flux<ProductCatalogView> catalogStream(Long after, Integer limit) {
+        int products = limit == null ? Integer.MAX_VALUE : Math.max(1, limit);
+        CatalogSnapshot.Snapshot snapshot = catalogSnapshot.current();
+        if (snapshot != null) {
+            return Flux.fromIterable(snapshot.page(after, products));
+        }
+        return inventoryBatchLoader.joinInventory(limit == null
+                ? getProducts().filter(product -> after == null || product.getProductId() > after)
+                : getProductsPage(after, products));
+    }
+
     public Flux<ProductCatalogView> getProductsAndInventories() {
-        LOG.info("getProductsAndInventories");
-        return getProducts().flatMap(product -> getInventory(product.getProductId()).map(inventory -> {
-            ProductCatalogView catalogView = new ProductCatalogView();
-            catalogView.setProduct(product);
-            catalogView.setInventory(inventory);
-            return catalogView;
-        }));
+        return inventoryBatchLoader.joinInventory(getProducts());
+    }
+
+    public Flux<ProductCatalogView> getProductCatalogPage(Long after, Integer limit) {
+        return inventoryBatchLoader.joinInventory(getProductsPage(after, pageSize(limit)));
+    }
+
+    private int pageSize(Integer limit) {
+        return limit == null ? maxPageSize : Math.max(1, Math.min(limit, maxPageSize));
     }
 
     @PostMapping("/createOrder")
-    public Mono<ResponseEntity<String>> createOrderAndPayment(@RequestParam Long productId, @RequestParam Integer quantity, @RequestParam Long customerId) {
-        LOG.info("createOrderAndPayment");
-        return createOrder(productId, quantity, customerId)
-                .flatMap(order -> createPayment(order.getOrderId(), order.getTotalAmount())
-                        .map(payment -> ResponseEntity.ok("Order created successfully ORDER_ID: " + order.getOrderId())))
+    public Mono<ResponseEntity<String>> createOrderAndPayment(@RequestParam Long productId, @RequestParam Integer quantity, @RequestParam Long customerId,
+                                                              @RequestHeader(value = Idempotency.HEADER, required = false) String idempotencyKey) {
+        LOG.debug("createOrderAndPayment");
+        String fingerprint = "productId=" + productId + "&quantity=" + quantity + "&customerId=" + customerId;
+        return idempotency.execute("createOrder", idempotencyKey, fingerprint, () -> createOrder(productId, quantity, customerId)
+                        .flatMap(order -> createPayment(order.getOrderId(), order.getTotalAmount())
+                                .onErrorResume(error -> cancelUnpaidOrder(productId, order, error))
+                                .map(payment -> ResponseEntity.ok("Order created successfully ORDER_ID: " + order.getOrderId()))))
                 .onErrorResume(error -> Mono.just(ResponseEntity.badRequest().body(error.getMessage())));
     }
 
     @PutMapping("/processPayment")
-    public Mono<ResponseEntity<String>> processPayment(@RequestParam Long orderId) {
-        LOG.info("processPayment");
-        return processOrder(orderId)
-                .map(msg -> ResponseEntity.ok("Order confirmed successfully ORDER_ID: " + orderId))
+    public Mono<ResponseEntity<String>> processPayment(@RequestParam Long orderId,
+                                                       @RequestParam(defaultValue = "${compositor.orders.async.default:false}") boolean async,
+                                                       @RequestHeader(value = Idempotency.HEADER, required = false) String idempotencyKey) {
+        LOG.debug("processPayment");
+        if (async) {
+            // THE WORKERS DO THE DOWNSTREAM CALLS; THE CALLER ONLY WAITS FOR KAFKA TO TAKE THE COMMAND
+            return idempotency.execute("processPayment", idempotencyKey, "orderId=" + orderId + "&async=true", () -> orderCommands.submit(orderId)
+                            .thenReturn(ResponseEntity.accepted()
+                                    .header(HttpHeaders.LOCATION, "/api/v1/processPayment/" + orderId)
+                                    .body("Order accepted for processing ORDER_ID: " + orderId)))
+                    .onErrorResume(error -> {
+                        LOG.error("Could not queue order ID: {} for processing: {}", orderId, error.toString());
+                        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Order processing is unavailable, retry later"));
+                    });
+        }
+        return idempotency.execute("processPayment", idempotencyKey, "orderId=" + orderId, () -> processOrder(orderId)
+                        .map(msg -> ResponseEntity.ok("Order confirmed successfully ORDER_ID: " + orderId)))
                 .onErrorResume(error -> Mono.just(ResponseEntity.badRequest().body(error.getMessage())));
     }
 
+    @GetMapping("/processPayment/{orderId}")
+    public Mono<ResponseEntity<OrderCommands.Status>> processPaymentStatus(@PathVariable Long orderId) {
+        return orderCommands.status(orderId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
     public Mono<OrderView> createOrder(Long productId, Integer quantity, Long customerId) {
-        LOG.info("createOrder");
-        return checkInventory(productId, quantity)
-                .flatMap(isAvailable -> {
-                    if (isAvailable) {
-                        return getProductDetail(productId)
-                                .flatMap(product -> {
-                                    BigDecimal amount = product.getPrice().multiply(BigDecimal.valueOf(quantity));
-                                    OrderView order = new OrderView();
-                                    order.setProductId(productId);
-                                    order.setQuantity(quantity);
-                                    order.setCustomerId(customerId);
-                                    order.setStatus("PENDING_PAYMENT");
-                                    order.setTotalAmount(amount);
-                                    order.setOrderDate(LocalDateTime.now());
-                                    return postOrder(order).doFinally(signalType -> {
-                                        try {
-                                            producer.publishMessage(order.getOrderId() + "", "ORDER CREATED");
-                                        } catch (JsonProcessingException e) {
-                                            throw new RuntimeException(e);
-                                        }
-                                    });
-                                });
-                    } else {
+        LOG.debug("createOrder");
+        // THE STOCK CHECK, THE PRICE LOOKUP AND THE CUSTOMER CHECK ARE INDEPENDENT, SO THEY RUN SIDE BY SIDE
+        return Mono.zip(checkInventory(productId, quantity), getProductDetail(productId),
+                        customerDirectory.validate(customerId).thenReturn(true))
+                .flatMap(fetched -> {
+                    if (!fetched.getT1()) {
                         LOG.error("Insufficient inventory for product ID: {}", productId);
                         return Mono.error(new RuntimeException("Insufficient inventory for product ID: " + productId));
                     }
+                    return placeOrder(fetched.getT2(), quantity, customerId, stockOnHand(productId))
+                            .delayUntil(saved -> orderEventOutbox.record(saved.getOrderId(), "ORDER CREATED"));
                 });
     }
 
+    @PostMapping(value = "/createOrders", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BulkOrderResult> createOrders(@RequestBody BulkOrderRequest request) {
+        LOG.debug("createOrders");
+        List<BulkOrderRequest.Line> lines = request.getLines() == null ? List.of() : request.getLines();
+        if (request.getCustomerId() == null || lines.isEmpty() || lines.size() > maxBulkLines) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A bulk order needs a customerId and 1 to " + maxBulkLines + " lines");
+        }
+        // EACH DISTINCT PRODUCT IS LOOKED UP ONCE AND ALL THEIR STOCK IN ONE BATCH, HOWEVER MANY LINES SHARE IT
+        Set<Long> unavailable = ConcurrentHashMap.newKeySet();
+        Flux<ProductView> products = Flux.fromIterable(lines)
+                .map(BulkOrderRequest.Line::getProductId)
+                .distinct()
+                .flatMap(productId -> getProductDetail(productId)
+                        .onErrorResume(WebClientResponseException.NotFound.class, error -> Mono.empty())
+                        .onErrorResume(error -> {
+                            LOG.warn("Could not look up product ID: {} for a bulk order: {}", productId, error.toString());
+                            unavailable.add(productId);
+                            return Mono.empty();
+                        }));
+        Mono<Map<Long, ProductCatalogView>> joined = inventoryBatchLoader.joinInventory(products)
+                .distinct(catalogView -> catalogView.getProduct().getProductId())
+                .collectMap(catalogView -> catalogView.getProduct().getProductId());
+        return Mono.zip(joined, customerDirectory.validate(request.getCustomerId()).thenReturn(true))
+                .map(Tuple2::getT1)
+                .onErrorMap(CustomerDirectory.UnknownCustomerException.class,
+                        error -> new ResponseStatusException(HttpStatus.BAD_REQUEST, error.getMessage()))
+                .flatMapMany(catalog -> Flux.range(0, lines.size())
+                        .flatMap(index -> createOrderLine(index, lines.get(index), request.getCustomerId(), catalog.get(lines.get(index).getProductId()),
+                                        unavailable.contains(lines.get(index).getProductId())),
+                                bulkConcurrency));
+    }
+
+    private Mono<BulkOrderResult> createOrderLine(int index, BulkOrderRequest.Line line, Long customerId, ProductCatalogView catalogView,
+                                                  boolean catalogUnavailable) {
+        BulkOrderResult result = new BulkOrderResult();
+        result.setLine(index);
+        result.setProductId(line.getProductId());
+        result.setQuantity(line.getQuantity());
+        if (line.getQuantity() == null || line.getQuantity() < 1) {
+            return Mono.just(rejected(result, "Quantity must be at least 1"));
+        }
+        if (catalogUnavailable) {
+            return Mono.just(rejected(result, "Product catalog is unavailable for product ID: " + line.getProductId() + ", retry later"));
+        }
+        if (catalogView == null) {
+            return Mono.just(rejected(result, "Unknown product ID: " + line.getProductId()));
+        }
+        if (catalogView.getInventory().getQuantity() < line.getQuantity()) {
+            return Mono.just(rejected(result, "Insufficient inventory for product ID: " + line.getProductId()));
+        }
+        return placeOrder(catalogView.getProduct(), line.getQuantity(), customerId, Mono.just(catalogView.getInventory().getQuantity()))
+                .flatMap(order -> postPayment(newPayment(order.getOrderId(), order.getTotalAmount()))
+                        .onErrorResume(error -> cancelUnpaidOrder(line.getProductId(), order, error))
+                        .then(orderEventOutbox.record(order.getOrderId(), List.of("ORDER CREATED", "PAYMENT CREATED")))
+                        .then(Mono.fromSupplier(() -> {
+                            result.setOrderId(order.getOrderId());
+                            result.setStatus("CREATED");
+                            return result;
+                        })))
+                .onErrorResume(error -> Mono.just(rejected(result, error.getMessage())));
+    }
+
+    private static BulkOrderResult rejected(BulkOrderResult result, String message) {
+        result.setStatus("REJECTED");
+        result.setMessage(message);
+        return result;
+    }
+
+    private Mono<OrderView> placeOrder(ProductView product, Integer quantity, Long customerId, Mono<Integer> stockOnHand) {
+        BigDecimal amount = product.getPrice().multiply(BigDecimal.valueOf(quantity));
+        OrderView order = new OrderView();
+        order.setProductId(product.getProductId());
+        order.setQuantity(quantity);
+        order.setCustomerId(customerId);
+        order.setStatus("PENDING_PAYMENT");
+        order.setTotalAmount(amount);
+        order.setOrderDate(LocalDateTime.now());
+        // THE STOCK CHECK ONLY SCREENS OUT OBVIOUS MISSES; THE RESERVATION IS WHAT ACTUALLY TAKES THE STOCK
+        return postOrder(order)
+                .flatMap(saved -> inventoryReservations.reserve(product.getProductId(), saved.getOrderId(), quantity, stockOnHand)
+                        .thenReturn(saved)
+                        .onErrorResume(InventoryReservations.InsufficientInventoryException.class,
+                                error -> cancelOrder(saved).then(Mono.error(error))));
+    }
+
+    // WITHOUT A PAYMENT THE ORDER CAN NEVER COMPLETE, SO IT IS CANCELLED AND ITS STOCK GOES BACK
+    private <T> Mono<T> cancelUnpaidOrder(Long productId, OrderView order, Throwable error) {
+        return inventoryReservations.release(productId, order.getOrderId())
+                .then(cancelOrder(order))
+                .onErrorResume(compensation -> {
+                    LOG.error("Could not cancel order ID: {} after its payment failed: {}", order.getOrderId(), compensation.toString());
+                    return Mono.empty();
+                })
+                .then(Mono.error(error));
+    }
+
+    private Mono<OrderView> cancelOrder(OrderView order) {
+        order.setStatus("CANCELLED");
+        return putOrder(order.getOrderId(), order);
+    }
+
     public Mono<PaymentView> createPayment(Long orderId, BigDecimal amount) {
-        LOG.info("createPayment");
+        LOG.debug("createPayment");
+        return postPayment(newPayment(orderId, amount)).delayUntil(saved -> orderEventOutbox.record(orderId, "PAYMENT CREATED"));
+    }
+
+    private static PaymentView newPayment(Long orderId, BigDecimal amount) {
         PaymentView payment = new PaymentView();
         payment.setOrderId(orderId);
         payment.setAmount(amount);
         payment.setPaymentMethod("ONLINE");
         payment.setStatus("PENDING_PAYMENT");
-        return postPayment(payment).doFinally(signalType -> {
-            try {
-                producer.publishMessage(payment.getOrderId() + "", "PAYMENT CREATED");
-            } catch (JsonProcessingException e) {
-                LOG.error("Error while creating payment for order ID: {}", orderId);
-                throw new RuntimeException(e);
-            }
-        });
+        return payment;
     }
 
     private Mono<Boolean> checkInventory(Long productId, Integer requestedQuantity) {
-        LOG.info("checkInventory");
-        return inventoryWebClient
-                .get()
-                .uri("/" + productId)
-                .retrieve()
-                .bodyToMono(InventoryView.class)
+        LOG.debug("checkInventory");
+        return getInventory(productId)
+                .next()
                 .map(inventory -> inventory.getQuantity() >= requestedQuantity);
     }
 
+    private Mono<Integer> stockOnHand(Long productId) {
+        return getInventory(productId)
+                .next()
+                .map(InventoryView::getQuantity);
+    }
+
+    // getOrder HANDS THE SAME INSTANCE TO EVERY CONCURRENT CALLER, SO A STATUS CHANGE GOES ON A COPY
+    private static OrderView withStatus(OrderView order, String status) {
+        OrderView updated = new OrderView();
+        updated.setOrderId(order.getOrderId());
+        updated.setProductId(order.getProductId());
+        updated.setQuantity(order.getQuantity());
+        updated.setCustomerId(order.getCustomerId());
+        updated.setOrderDate(order.getOrderDate());
+        updated.setTotalAmount(order.getTotalAmount());
+        updated.setStatus(status);
+        return updated;
+    }
+
     public Mono<String> processOrder(Long orderId) {
-        LOG.info("processOrder");
+        LOG.debug("processOrder");
         return getOrder(orderId)
                 .filter(order -> "PENDING_PAYMENT".equals(order.getStatus()))
-                .flatMap(order -> checkInventory(order.getProductId(), order.getQuantity())
-                        .flatMap(isAvailable -> {
-                            if (isAvailable) {
-                                return getInventory(order.getProductId())
-                                        .flatMap(inventory -> {
-                                            inventory.setQuantity(inventory.getQuantity() - order.getQuantity());
-                                            inventory.setLastUpdated(LocalDateTime.now());
-                                            return putInventory(inventory.getInventoryId(), inventory);
-                                        })
-                                        .then(getPayment(orderId)
-                                                .flatMap(payment -> {
-                                                    payment.setStatus("PAYMENT_COMPLETED");
-                                                    payment.setPaymentDate(LocalDateTime.now());
-                                                    return putPayment(payment.getPaymentId(), payment).doFinally(signalType -> {
-                                                        try {
-                                                            producer.publishMessage(payment.getOrderId() + "", "PAYMENT COMPLETED");
-                                                        } catch (JsonProcessingException e) {
-                                                            throw new RuntimeException(e);
-                                                        }
-                                                    });
-                                                }))
-                                        .then(getOrder(orderId)
-                                                .flatMap(order2 -> {
-                                                    order2.setStatus("PAYMENT_COMPLETED");
-                                                    return putOrder(order2.getOrderId(), order2).doFinally(signalType -> {
-                                                        try {
-                                                            producer.publishMessage(order2.getOrderId() + "", "ORDER COMPLETED");
-                                                        } catch (JsonProcessingException e) {
-                                                            throw new RuntimeException(e);
-                                                        }
-                                                    });
-                                                }))
-                                        .thenReturn("PAYMENT_COMPLETED"); // Return OrderView after processing
-                            } else {
-                                LOG.error("Insufficient inventory for product ID: {}", order.getProductId());
-                                return Mono.error(new RuntimeException("Insufficient inventory for product ID: " + order.getProductId()));
-                            }
-                        })
-                );
+                // THE STOCK HOLD AND THE PAYMENT ONLY DEPEND ON THE ORDER, SO BOTH ARE SETTLED AT ONCE
+                .flatMap(order -> Mono.zip(
+                                inventoryReservations.reserve(order.getProductId(), orderId, order.getQuantity(), stockOnHand(order.getProductId()))
+                                        .thenReturn(true),
+                                getPayment(orderId).map(Optional::of).defaultIfEmpty(Optional.empty()))
+                        .flatMap(fetched -> {
+                            Mono<Void> paymentUpdate = Mono.justOrEmpty(fetched.getT2())
+                                    .flatMap(payment -> {
+                                        payment.setStatus("PAYMENT_COMPLETED");
+                                        payment.setPaymentDate(LocalDateTime.now());
+                                        return putPayment(payment.getPaymentId(), payment)
+                                                .delayUntil(saved -> orderEventOutbox.record(orderId, "PAYMENT COMPLETED"));
+                                    })
+                                    .then()
+                                    .onErrorResume(error -> inventoryReservations.release(order.getProductId(), orderId).then(Mono.error(error)));
+                            // THE ORDER IS ONLY MARKED COMPLETE ONCE THE PAYMENT IS WRITTEN AND THE STOCK IS SOLD
+                            return paymentUpdate
+                                    .then(inventoryReservations.commit(order.getProductId(), orderId))
+                                    .then(Mono.defer(() -> putOrder(order.getOrderId(), withStatus(order, "PAYMENT_COMPLETED"))
+                                            .delayUntil(saved -> orderEventOutbox.record(orderId, "ORDER COMPLETED"))))
+                                    .thenReturn("PAYMENT_COMPLETED");
+                        }));
     }
 
 }
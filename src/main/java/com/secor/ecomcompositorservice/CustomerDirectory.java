@@ -0,0 +1,173 @@
+package com.secor.ecomcompositorservice;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Answers "does this customer exist" from a bounded in-heap cache. Misses from concurrent requests are
+ * collected for a short window and loaded with one query, so a burst of orders from new customers costs a
+ * handful of queries rather than one each. Unknown IDs are cached too, for a shorter time, so a bad ID
+ * cannot hammer the database.
+ */
+@Component
+public class CustomerDirectory {
+
+    private final CustomersRepository customersRepository;
+    private final BlockingExecution blockingExecution;
+    private final Cache<Long, Optional<Customers>> cache;
+    private final Duration ttl;
+    private final Duration missingTtl;
+    private final Duration batchWindow;
+    private final int batchSize;
+    private final DistributionSummary batchSizes;
+
+    private final Map<Long, Sinks.One<Optional<Customers>>> pending = new ConcurrentHashMap<>();
+    private final Queue<Long> queued = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    public CustomerDirectory(CustomersRepository customersRepository,
+                             BlockingExecution blockingExecution,
+                             MeterRegistry meterRegistry,
+                             @Value("${compositor.customers.cache.ttl:10m}") Duration ttl,
+                             @Value("${compositor.customers.cache.missing-ttl:30s}") Duration missingTtl,
+                             @Value("${compositor.customers.cache.max-size:100000}") long maxSize,
+                             @Value("${compositor.customers.batch.window:5ms}") Duration batchWindow,
+                             @Value("${compositor.customers.batch.size:200}") int batchSize) {
+        this.customersRepository = customersRepository;
+        this.blockingExecution = blockingExecution;
+        this.ttl = ttl;
+        this.missingTtl = missingTtl;
+        this.batchWindow = batchWindow;
+        this.batchSize = batchSize;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new CustomerExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "compositor.customers");
+        this.batchSizes = DistributionSummary.builder("compositor.customers.batch.size")
+                .description("Customer IDs loaded per query")
+                .register(meterRegistry);
+    }
+
+    public Mono<Customers> find(Long customerId) {
+        return Mono.defer(() -> {
+            Optional<Customers> cached = cache.getIfPresent(customerId);
+            if (cached != null) {
+                return Mono.justOrEmpty(cached);
+            }
+            return load(customerId).flatMap(Mono::justOrEmpty);
+        });
+    }
+
+    /**
+     * Completes empty when the customer exists, fails with {@link UnknownCustomerException} when not.
+     */
+    public Mono<Void> validate(Long customerId) {
+        return find(customerId)
+                .switchIfEmpty(Mono.error(() -> new UnknownCustomerException(customerId)))
+                .then();
+    }
+
+    public void evict(Long customerId) {
+        cache.invalidate(customerId);
+    }
+
+    private Mono<Optional<Customers>> load(Long customerId) {
+        boolean[] first = {false};
+        Sinks.One<Optional<Customers>> sink = pending.computeIfAbsent(customerId, id -> {
+            first[0] = true;
+            return Sinks.one();
+        });
+        if (first[0]) {
+            queued.add(customerId);
+            scheduleFlush();
+        }
+        return sink.asMono();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            Schedulers.parallel().schedule(this::flush, batchWindow.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush() {
+        List<Long> batch = new ArrayList<>(batchSize);
+        Long customerId;
+        while (batch.size() < batchSize && (customerId = queued.poll()) != null) {
+            batch.add(customerId);
+        }
+        flushScheduled.set(false);
+        if (!queued.isEmpty()) {
+            scheduleFlush();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        batchSizes.record(batch.size());
+        blockingExecution.call(() -> customersRepository.findByCustomerIdIn(batch))
+                .subscribe(found -> {
+                    Map<Long, Customers> byId = found.stream().collect(Collectors.toMap(Customers::getCustomerId, Function.identity()));
+                    for (Long id : batch) {
+                        Optional<Customers> customer = Optional.ofNullable(byId.get(id));
+                        cache.put(id, customer);
+                        complete(id, sink -> sink.tryEmitValue(customer));
+                    }
+                }, error -> batch.forEach(id -> complete(id, sink -> sink.tryEmitError(error))));
+    }
+
+    private void complete(Long customerId, Function<Sinks.One<Optional<Customers>>, Sinks.EmitResult> emit) {
+        Sinks.One<Optional<Customers>> sink = pending.remove(customerId);
+        if (sink != null) {
+            emit.apply(sink);
+        }
+    }
+
+    private final class CustomerExpiry implements Expiry<Long, Optional<Customers>> {
+
+        @Override
+        public long expireAfterCreate(Long key, Optional<Customers> value, long currentTime) {
+            return (value.isPresent() ? ttl : missingTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(Long key, Optional<Customers> value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long key, Optional<Customers> value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    public static class UnknownCustomerException extends RuntimeException {
+
+        public UnknownCustomerException(Long customerId) {
+            super("Unknown customer ID: " + customerId);
+        }
+    }
+}
@@ -1,6 +1,21 @@
 package com.secor.ecomcompositorservice;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface CustomersRepository extends JpaRepository<Customers, Long> {
+
+    // LOADED ONLY TO BE CACHED, SO HIBERNATE NEED NOT SNAPSHOT THEM FOR DIRTY CHECKING
+    @Transactional(readOnly = true)
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "256")
+    })
+    List<Customers> findByCustomerIdIn(Collection<Long> customerIds);
 }
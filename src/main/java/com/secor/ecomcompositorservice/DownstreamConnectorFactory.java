@@ -0,0 +1,92 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * One tuned Reactor Netty connection pool per downstream service, shared by every request to it.
+ */
+@Component
+public class DownstreamConnectorFactory {
+
+    private final DownstreamProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+    private final Map<String, List<Meter>> poolMeters = new ConcurrentHashMap<>();
+
+    public DownstreamConnectorFactory(DownstreamProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public ReactorClientHttpConnector connector(String serviceName) {
+        DownstreamProperties.Connector settings = properties.forService(serviceName);
+        ConnectionProvider provider = providers.computeIfAbsent(serviceName, name -> ConnectionProvider.builder(name)
+                .maxConnections(settings.getMaxConnections())
+                .pendingAcquireMaxCount(settings.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(settings.getPendingAcquireTimeout())
+                .maxIdleTime(settings.getMaxIdleTime())
+                .maxLifeTime(settings.getMaxLifeTime())
+                .evictInBackground(settings.getEvictInBackground())
+                // LIFO KEEPS TRAFFIC ON THE WARMEST CONNECTIONS AND LETS THE SURPLUS AGE OUT AFTER A BURST
+                .lifo()
+                .metrics(true, PoolMeterRegistrar::new)
+                .build());
+
+        HttpClient httpClient = HttpClient.create(provider)
+                .protocol(HttpProtocol.valueOf(settings.getProtocol().toUpperCase()))
+                .keepAlive(settings.getKeepAlive())
+                .compress(settings.getCompress())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) settings.getConnectTimeout().toMillis())
+                .responseTimeout(settings.getResponseTimeout());
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
+    private Meter poolGauge(String name, String description, Tags tags, ConnectionPoolMetrics metrics, ToDoubleFunction<ConnectionPoolMetrics> value) {
+        return Gauge.builder(name, metrics, value).description(description).tags(tags).register(meterRegistry);
+    }
+
+    // REACTOR NETTY KEEPS ONE POOL PER REMOTE ADDRESS, SO GAUGES COME AND GO WITH DOWNSTREAM INSTANCES
+    private class PoolMeterRegistrar implements ConnectionProvider.MeterRegistrar {
+
+        @Override
+        public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+            Tags tags = Tags.of("service", poolName, "remote", String.valueOf(remoteAddress));
+            poolMeters.put(poolName + id + remoteAddress, List.of(
+                    poolGauge("compositor.downstream.pool.active", "Connections handed out to requests", tags, metrics, ConnectionPoolMetrics::acquiredSize),
+                    poolGauge("compositor.downstream.pool.idle", "Connections open and waiting in the pool", tags, metrics, ConnectionPoolMetrics::idleSize),
+                    poolGauge("compositor.downstream.pool.pending", "Requests waiting to acquire a connection", tags, metrics, ConnectionPoolMetrics::pendingAcquireSize),
+                    poolGauge("compositor.downstream.pool.max", "Maximum connections the pool may open", tags, metrics, ConnectionPoolMetrics::maxAllocatedSize)));
+        }
+
+        @Override
+        public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+            List<Meter> meters = poolMeters.remove(poolName + id + remoteAddress);
+            if (meters != null) {
+                meters.forEach(meterRegistry::remove);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void dispose() {
+        poolMeters.values().forEach(meters -> meters.forEach(meterRegistry::remove));
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+}
@@ -0,0 +1,41 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Part of the readiness group: OUT_OF_SERVICE while any downstream has no known instance, so a pod that
+ * starts before its downstreams have registered is kept out of rotation instead of failing to start.
+ * Reads only the registry's cached lists, so probing it never reaches discovery.
+ */
+@Component("downstreams")
+public class DownstreamHealthIndicator implements HealthIndicator {
+
+    private final ServiceInstanceRegistry serviceInstanceRegistry;
+    private final boolean required;
+
+    public DownstreamHealthIndicator(ServiceInstanceRegistry serviceInstanceRegistry,
+                                     @Value("${compositor.readiness.require-downstreams:true}") boolean required) {
+        this.serviceInstanceRegistry = serviceInstanceRegistry;
+        this.required = required;
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Integer> counts = new TreeMap<>();
+        boolean missing = false;
+        for (Map.Entry<String, List<ServiceInstance>> entry : serviceInstanceRegistry.known().entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+            missing |= entry.getValue().isEmpty();
+        }
+        Health.Builder health = missing && required ? Health.outOfService() : Health.up();
+        return health.withDetail("instances", counts).build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Times every call to one downstream service by route (the URI template, e.g. /products/{id}) and status,
+ * tracks calls in flight and response sizes, and counts failures. Meters are created once per route and
+ * looked up afterwards, so a request costs a map lookup rather than a meter build. Per-request debug lines
+ * are sampled and only built when DEBUG is on for this class, which can be flipped at runtime through
+ * /actuator/loggers.
+ */
+public class DownstreamMetricsFilter implements ExchangeFilterFunction {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DownstreamMetricsFilter.class);
+    private static final String URI_TEMPLATE = WebClient.class.getName() + ".uriTemplate";
+
+    private final String serviceName;
+    private final MeterRegistry meterRegistry;
+    private final Duration[] slos;
+    private final double logSampleRate;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final DistributionSummary responseSize;
+    private final Map<String, String> routes = new ConcurrentHashMap<>();
+    private final Map<Outcome, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<Outcome, Counter> errors = new ConcurrentHashMap<>();
+
+    public DownstreamMetricsFilter(String serviceName, MeterRegistry meterRegistry, Duration[] slos, double logSampleRate) {
+        this.serviceName = serviceName;
+        this.meterRegistry = meterRegistry;
+        this.slos = slos;
+        this.logSampleRate = logSampleRate;
+        Gauge.builder("compositor.downstream.inflight", inFlight, AtomicInteger::get)
+                .description("Calls to the service waiting for a response")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+        this.responseSize = DistributionSummary.builder("compositor.downstream.response.size")
+                .description("Response body size as announced by Content-Length")
+                .baseUnit("bytes")
+                .tag("service", serviceName)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            String route = route(request);
+            long start = System.nanoTime();
+            inFlight.incrementAndGet();
+            return next.exchange(request)
+                    .doOnSuccess(response -> {
+                        int status = response == null ? 0 : response.statusCode().value();
+                        Outcome outcome = new Outcome(request.method(), route, String.valueOf(status));
+                        stop(outcome, start);
+                        if (response != null) {
+                            response.headers().contentLength().ifPresent(responseSize::record);
+                        }
+                        if (status >= 500) {
+                            error(outcome).increment();
+                        }
+                        if (LOG.isDebugEnabled() && sampled()) {
+                            LOG.debug("{} {} {} -> {} in {} us", serviceName, request.method(), request.url(), status,
+                                    (System.nanoTime() - start) / 1000);
+                        }
+                    })
+                    .doOnError(error -> {
+                        Outcome outcome = new Outcome(request.method(), route, error.getClass().getSimpleName());
+                        stop(outcome, start);
+                        error(outcome).increment();
+                        if (LOG.isDebugEnabled() && sampled()) {
+                            LOG.debug("{} {} {} failed after {} us: {}", serviceName, request.method(), request.url(),
+                                    (System.nanoTime() - start) / 1000, error.toString());
+                        }
+                    })
+                    .doOnCancel(() -> stop(new Outcome(request.method(), route, "CANCELLED"), start));
+        });
+    }
+
+    private void stop(Outcome outcome, long start) {
+        inFlight.decrementAndGet();
+        timers.computeIfAbsent(outcome, this::timer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(Outcome outcome) {
+        return Timer.builder("compositor.downstream.requests")
+                .description("Time until the downstream service answered with headers")
+                .tag("service", serviceName)
+                .tag("method", outcome.method().name())
+                .tag("route", outcome.route())
+                .tag("status", outcome.status())
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(slos)
+                .register(meterRegistry);
+    }
+
+    private Counter error(Outcome outcome) {
+        return errors.computeIfAbsent(outcome, key -> Counter.builder("compositor.downstream.errors")
+                .description("Calls that failed or answered 5xx")
+                .tag("service", serviceName)
+                .tag("method", key.method().name())
+                .tag("route", key.route())
+                .tag("status", key.status())
+                .register(meterRegistry));
+    }
+
+    // THE URI TEMPLATE KEEPS IDS OUT OF THE TAGS; REQUESTS BUILT WITHOUT ONE HAVE THEIR NUMERIC SEGMENTS MASKED
+    private String route(ClientRequest request) {
+        Object template = request.attribute(URI_TEMPLATE).orElse(null);
+        if (template == null) {
+            String path = request.url().getRawPath();
+            return path.isEmpty() ? "/" : path.replaceAll("/\\d+(?=/|$)", "/{id}");
+        }
+        return routes.computeIfAbsent(template.toString(), DownstreamMetricsFilter::pathOf);
+    }
+
+    private static String pathOf(String template) {
+        int scheme = template.indexOf("://");
+        int path = scheme < 0 ? 0 : template.indexOf('/', scheme + 3);
+        int query = template.indexOf('?');
+        if (path < 0) {
+            return "/";
+        }
+        return template.substring(path, query < 0 ? template.length() : query);
+    }
+
+    private boolean sampled() {
+        return logSampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < logSampleRate;
+    }
+
+    private record Outcome(HttpMethod method, String route, String status) {
+    }
+}
@@ -0,0 +1,77 @@
+package com.secor.ecomcompositorservice;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Connector settings for the downstream WebClients. Anything not set under
+ * compositor.downstream.services.&lt;service-name&gt; falls back to compositor.downstream.defaults.
+ */
+@Getter @Setter
+@ConfigurationProperties(prefix = "compositor.downstream")
+public class DownstreamProperties {
+
+    private Connector defaults = Connector.defaults();
+    private Map<String, Connector> services = new HashMap<>();
+
+    public Connector forService(String serviceName) {
+        Connector overrides = services.get(serviceName);
+        return overrides == null ? defaults : overrides.withFallback(defaults);
+    }
+
+    @Getter @Setter
+    public static class Connector {
+
+        // HTTP11 (KEEP-ALIVE POOL) OR H2C (CLEARTEXT HTTP/2, MANY STREAMS PER CONNECTION)
+        private String protocol;
+        private Integer maxConnections;
+        private Integer pendingAcquireMaxCount;
+        private Duration pendingAcquireTimeout;
+        private Duration maxIdleTime;
+        private Duration maxLifeTime;
+        private Duration evictInBackground;
+        private Duration connectTimeout;
+        private Duration responseTimeout;
+        private Boolean keepAlive;
+        // SEND Accept-Encoding: gzip AND INFLATE WHAT COMES BACK
+        private Boolean compress;
+
+        static Connector defaults() {
+            Connector connector = new Connector();
+            connector.protocol = "HTTP11";
+            connector.maxConnections = 200;
+            connector.pendingAcquireMaxCount = 1000;
+            connector.pendingAcquireTimeout = Duration.ofSeconds(5);
+            // BELOW THE USUAL 60S SERVER IDLE TIMEOUT, SO WE CLOSE FIRST INSTEAD OF WRITING INTO A DEAD SOCKET
+            connector.maxIdleTime = Duration.ofSeconds(30);
+            connector.maxLifeTime = Duration.ofMinutes(5);
+            connector.evictInBackground = Duration.ofSeconds(30);
+            connector.connectTimeout = Duration.ofSeconds(2);
+            connector.responseTimeout = Duration.ofSeconds(5);
+            connector.keepAlive = true;
+            connector.compress = true;
+            return connector;
+        }
+
+        Connector withFallback(Connector fallback) {
+            Connector merged = new Connector();
+            merged.protocol = protocol != null ? protocol : fallback.protocol;
+            merged.maxConnections = maxConnections != null ? maxConnections : fallback.maxConnections;
+            merged.pendingAcquireMaxCount = pendingAcquireMaxCount != null ? pendingAcquireMaxCount : fallback.pendingAcquireMaxCount;
+            merged.pendingAcquireTimeout = pendingAcquireTimeout != null ? pendingAcquireTimeout : fallback.pendingAcquireTimeout;
+            merged.maxIdleTime = maxIdleTime != null ? maxIdleTime : fallback.maxIdleTime;
+            merged.maxLifeTime = maxLifeTime != null ? maxLifeTime : fallback.maxLifeTime;
+            merged.evictInBackground = evictInBackground != null ? evictInBackground : fallback.evictInBackground;
+            merged.connectTimeout = connectTimeout != null ? connectTimeout : fallback.connectTimeout;
+            merged.responseTimeout = responseTimeout != null ? responseTimeout : fallback.responseTimeout;
+            merged.keepAlive = keepAlive != null ? keepAlive : fallback.keepAlive;
+            merged.compress = compress != null ? compress : fallback.compress;
+            return merged;
+        }
+    }
+}
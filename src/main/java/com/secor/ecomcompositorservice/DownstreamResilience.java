@@ -0,0 +1,81 @@
+package com.secor.ecomcompositorservice;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+
+import java.time.Duration;
+
+/**
+ * One circuit breaker and one bulkhead per downstream service, so a sick dependency only fails the calls
+ * that need it. State, failure rate, slow-call rate and bulkhead usage are exported as resilience4j.* meters.
+ */
+@Component
+public class DownstreamResilience {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DownstreamResilience.class);
+
+    private final ResilienceProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.ofDefaults();
+    private final BulkheadRegistry bulkheads = BulkheadRegistry.ofDefaults();
+
+    public DownstreamResilience(ResilienceProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheads).bindTo(meterRegistry);
+    }
+
+    public ResilienceExchangeFilter filter(String serviceName) {
+        ResilienceProperties.Policy policy = properties.forService(serviceName);
+        return new ResilienceExchangeFilter(serviceName, circuitBreaker(serviceName), bulkhead(serviceName), policy.getHedgeDelay(),
+                counter("compositor.downstream.hedged", "GETs re-sent because the first attempt was slow", serviceName),
+                counter("compositor.downstream.deadline.exceeded", "Calls cut short by the inbound request deadline", serviceName));
+    }
+
+    public CircuitBreaker circuitBreaker(String serviceName) {
+        ResilienceProperties.Policy policy = properties.forService(serviceName);
+        CircuitBreaker circuitBreaker = circuitBreakers.circuitBreaker(serviceName, CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.TIME_BASED)
+                .slidingWindowSize((int) Math.max(1, policy.getSlidingWindow().toSeconds()))
+                .minimumNumberOfCalls(policy.getMinimumNumberOfCalls())
+                .failureRateThreshold(policy.getFailureRateThreshold())
+                .slowCallRateThreshold(policy.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(policy.getSlowCallDuration())
+                .waitDurationInOpenState(policy.getWaitInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(policy.getPermittedCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // 5XX ANSWERS COUNT AGAINST THE SERVICE, 4XX ARE THE CALLER'S PROBLEM
+                .recordResult(result -> result instanceof ClientResponse response && response.statusCode().is5xxServerError())
+                // A FULL BULKHEAD IS OUR OWN BACKPRESSURE, NOT A SIGN THE SERVICE IS DOWN
+                .ignoreExceptions(BulkheadFullException.class)
+                .build());
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                LOG.warn("Circuit breaker for {} moved {}", serviceName, event.getStateTransition()));
+        return circuitBreaker;
+    }
+
+    public Bulkhead bulkhead(String serviceName) {
+        return bulkheads.bulkhead(serviceName, BulkheadConfig.custom()
+                .maxConcurrentCalls(properties.forService(serviceName).getMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+    }
+
+    private Counter counter(String name, String description, String serviceName) {
+        return Counter.builder(name).description(description).tag("service", serviceName).register(meterRegistry);
+    }
+}
@@ -0,0 +1,47 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.concurrent.EventExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a task queued on the Netty event loops (which run every WebClient callback) and on
+ * Reactor's parallel scheduler waits before it runs. A loop stalled by blocking work shows up here as lag
+ * long before it shows up as timeouts.
+ */
+@Component
+public class EventLoopLagMonitor {
+
+    private final Timer nettyLag;
+    private final Timer parallelLag;
+
+    public EventLoopLagMonitor(MeterRegistry meterRegistry) {
+        this.nettyLag = lagTimer(meterRegistry, "netty");
+        this.parallelLag = lagTimer(meterRegistry, "parallel");
+    }
+
+    @Scheduled(fixedDelayString = "${compositor.blocking.lag-probe-interval-ms:1000}")
+    public void probe() {
+        for (EventExecutor loop : HttpResources.get().onClient(LoopResources.DEFAULT_NATIVE)) {
+            long queuedAt = System.nanoTime();
+            loop.execute(() -> nettyLag.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS));
+        }
+        long queuedAt = System.nanoTime();
+        Schedulers.parallel().schedule(() -> parallelLag.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS));
+    }
+
+    private static Timer lagTimer(MeterRegistry meterRegistry, String loop) {
+        return Timer.builder("compositor.eventloop.lag")
+                .description("Time a probe task waited for a non-blocking thread")
+                .tag("loop", loop)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
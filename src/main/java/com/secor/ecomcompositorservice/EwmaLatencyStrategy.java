@@ -0,0 +1,16 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+/**
+ * Power of two choices weighted by observed latency: an instance costs its latency EWMA times
+ * the requests already queued on it. Unmeasured instances cost nothing, so they get probed first.
+ */
+public class EwmaLatencyStrategy extends PowerOfTwoChoicesStrategy {
+
+    @Override
+    protected double cost(ServiceInstance instance, ServiceInstanceRegistry registry) {
+        InstanceLoad load = registry.loadOf(instance);
+        return load.getEwmaNanos() * (load.getInFlight() + 1);
+    }
+}
@@ -0,0 +1,146 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs a request carrying an Idempotency-Key at most once per key. Repeats get the stored response without
+ * any downstream call; a repeat arriving while the first is still running joins it on the same node and
+ * waits for the stored response on any other. Failed requests are forgotten so the client can retry them,
+ * and reusing a key for different parameters is refused.
+ */
+@Component
+public class Idempotency {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger LOG = LoggerFactory.getLogger(Idempotency.class);
+
+    // A REPLAY MUST POINT AT THE SAME RESOURCE AND BE PARSED THE SAME WAY AS THE ORIGINAL
+    private static final List<String> REPLAYED_HEADERS = List.of(HttpHeaders.LOCATION, HttpHeaders.CONTENT_TYPE);
+
+    private final IdempotencyStore store;
+    private final SingleFlight singleFlight;
+    private final MeterRegistry meterRegistry;
+    private final Duration ttl;
+    private final Duration lease;
+    private final Duration wait;
+    private final Duration pollInterval;
+    private final Map<String, Counter> outcomes = new ConcurrentHashMap<>();
+
+    public Idempotency(IdempotencyStore store,
+                       SingleFlight singleFlight,
+                       MeterRegistry meterRegistry,
+                       @Value("${compositor.idempotency.ttl:24h}") Duration ttl,
+                       @Value("${compositor.idempotency.lease:30s}") Duration lease,
+                       @Value("${compositor.idempotency.wait:10s}") Duration wait,
+                       @Value("${compositor.idempotency.poll-interval:50ms}") Duration pollInterval) {
+        this.store = store;
+        this.singleFlight = singleFlight;
+        this.meterRegistry = meterRegistry;
+        this.ttl = ttl;
+        this.lease = lease;
+        this.wait = wait;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * @param fingerprint the request parameters the key was first used with
+     */
+    public Mono<ResponseEntity<String>> execute(String operation, String key, String fingerprint,
+                                                Supplier<Mono<ResponseEntity<String>>> request) {
+        if (key == null || key.isBlank()) {
+            return Mono.defer(request);
+        }
+        String scopedKey = operation + ":" + key;
+        // THE FINGERPRINT IS PART OF THE FLIGHT SO A REUSED KEY WITH OTHER PARAMETERS REACHES THE STORE AND IS REFUSED
+        return singleFlight.mono("idempotency", scopedKey + "|" + fingerprint, () -> {
+            long giveUpAt = System.nanoTime() + wait.toNanos();
+            return Mono.defer(() -> store.claim(scopedKey, fingerprint, lease))
+                    .flatMap(claimed -> claimed
+                            ? run(scopedKey, fingerprint, request)
+                            : store.get(scopedKey).flatMap(entry -> replay(entry, fingerprint, giveUpAt)))
+                    // EMPTY WHILE ANOTHER NODE IS STILL RUNNING IT, OR ONCE IT FAILED THERE AND THE KEY CAN BE CLAIMED
+                    .repeatWhenEmpty(attempts -> attempts.delayElements(pollInterval));
+        });
+    }
+
+    private Mono<ResponseEntity<String>> run(String scopedKey, String fingerprint, Supplier<Mono<ResponseEntity<String>>> request) {
+        count("executed");
+        // AN EMPTY RESULT IS WHAT SPRING WOULD HAVE SENT AS A BARE 200 ANYWAY; IT IS STORED AS ONE
+        return Mono.defer(request)
+                .defaultIfEmpty(ResponseEntity.ok().build())
+                .onErrorResume(error -> forget(scopedKey).then(Mono.error(error)))
+                .flatMap(response -> response.getStatusCode().is5xxServerError()
+                        ? forget(scopedKey).thenReturn(response)
+                        : record(scopedKey, fingerprint, response).thenReturn(response));
+    }
+
+    // THE REQUEST HAS ALREADY TAKEN EFFECT, SO THE KEY MUST NOT BE RELEASED FOR ANOTHER RUN; UNTIL THE LEASE
+    // RUNS OUT, REPEATS GET A 409 INSTEAD OF A REPLAY
+    private Mono<Void> record(String scopedKey, String fingerprint, ResponseEntity<String> response) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        REPLAYED_HEADERS.forEach(name -> {
+            String value = response.getHeaders().getFirst(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        });
+        return store.complete(scopedKey, new IdempotencyStore.Entry(fingerprint, response.getStatusCode().value(), headers, response.getBody()), ttl)
+                .onErrorResume(error -> {
+                    count("unrecorded");
+                    LOG.warn("Could not record the response for {}: {}", scopedKey, error.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> forget(String scopedKey) {
+        return store.release(scopedKey)
+                .onErrorResume(error -> {
+                    LOG.warn("Could not release {}, it frees up when its lease runs out: {}", scopedKey, error.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<ResponseEntity<String>> replay(IdempotencyStore.Entry entry, String fingerprint, long giveUpAt) {
+        if (!entry.fingerprint().equals(fingerprint)) {
+            count("mismatch");
+            return Mono.just(ResponseEntity.unprocessableEntity().body("Idempotency-Key was already used for a different request"));
+        }
+        if (entry.completed()) {
+            count("replayed");
+            return Mono.just(ResponseEntity.status(entry.status())
+                    .headers(headers -> entry.headers().forEach(headers::set))
+                    .header(REPLAYED_HEADER, "true")
+                    .body(entry.body()));
+        }
+        if (System.nanoTime() - giveUpAt > 0) {
+            count("conflict");
+            return Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).body("A request with this Idempotency-Key is still in progress"));
+        }
+        return Mono.empty();
+    }
+
+    private void count(String result) {
+        outcomes.computeIfAbsent(result, key -> Counter.builder("compositor.idempotency.requests")
+                .description("Requests with an Idempotency-Key by outcome")
+                .tag("result", key)
+                .register(meterRegistry)).increment();
+    }
+}
@@ -0,0 +1,40 @@
+package com.secor.ecomcompositorservice;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Shared record of Idempotency-Key requests for {@link Idempotency}. Redis in production, an in-memory
+ * stand-in in local mode.
+ */
+public interface IdempotencyStore {
+
+    /**
+     * Marks the key as in progress unless it is already known. The mark expires after {@code lease}, so a
+     * node that dies mid-request does not block the key for good.
+     */
+    Mono<Boolean> claim(String key, String fingerprint, Duration lease);
+
+    Mono<Entry> get(String key);
+
+    Mono<Void> complete(String key, Entry entry, Duration ttl);
+
+    Mono<Void> release(String key);
+
+    /**
+     * A request as seen under its key: the fingerprint of its parameters and, once it finished, its response.
+     * A status of 0 means it is still in progress.
+     */
+    record Entry(String fingerprint, int status, Map<String, String> headers, String body) {
+
+        static Entry inProgress(String fingerprint) {
+            return new Entry(fingerprint, 0, Map.of(), null);
+        }
+
+        boolean completed() {
+            return status > 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in for Redis when running with compositor.cache.mode=local.
+ */
+@Component
+@ConditionalOnProperty(name = "compositor.cache.mode", havingValue = "local")
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final Map<String, Stored> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Boolean> claim(String key, String fingerprint, Duration lease) {
+        return Mono.fromSupplier(() -> {
+            Stored claim = new Stored(Entry.inProgress(fingerprint), System.nanoTime() + lease.toNanos());
+            Stored current = entries.compute(key, (k, stored) -> stored == null || stored.expired() ? claim : stored);
+            return current == claim;
+        });
+    }
+
+    @Override
+    public Mono<Entry> get(String key) {
+        return Mono.fromSupplier(() -> {
+            Stored stored = entries.get(key);
+            if (stored == null) {
+                return null;
+            }
+            if (stored.expired()) {
+                entries.remove(key, stored);
+                return null;
+            }
+            return stored.entry();
+        });
+    }
+
+    @Override
+    public Mono<Void> complete(String key, Entry entry, Duration ttl) {
+        return Mono.fromRunnable(() -> entries.put(key, new Stored(entry, System.nanoTime() + ttl.toNanos())));
+    }
+
+    @Override
+    public Mono<Void> release(String key) {
+        return Mono.fromRunnable(() -> entries.remove(key));
+    }
+
+    private record Stored(Entry entry, long expiresAt) {
+
+        boolean expired() {
+            return expiresAt < System.nanoTime();
+        }
+    }
+}
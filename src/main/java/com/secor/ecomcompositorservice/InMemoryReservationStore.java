@@ -0,0 +1,211 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in for Redis when running with compositor.cache.mode=local. Each product has its own lock, so
+ * reservations for different products never wait on each other.
+ */
+@Component
+@ConditionalOnProperty(name = "compositor.cache.mode", havingValue = "local")
+public class InMemoryReservationStore implements ReservationStore {
+
+    private final Map<Long, ProductStock> products = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Long> reserve(Long productId, Long orderId, int quantity, Duration ttl) {
+        return Mono.fromSupplier(() -> {
+            ProductStock stock = products.get(productId);
+            if (stock == null) {
+                return NOT_SEEDED;
+            }
+            synchronized (stock) {
+                if (stock.holds.containsKey(orderId)) {
+                    return stock.available;
+                }
+                if (stock.available < quantity) {
+                    return INSUFFICIENT;
+                }
+                stock.available -= quantity;
+                stock.holds.put(orderId, new HeldQuantity(quantity, System.currentTimeMillis() + ttl.toMillis()));
+                return stock.available;
+            }
+        });
+    }
+
+    @Override
+    public Mono<Boolean> seed(Long productId, long quantity) {
+        return Mono.fromSupplier(() -> products.putIfAbsent(productId, new ProductStock(quantity)) == null);
+    }
+
+    @Override
+    public Mono<Long> release(Long productId, Long orderId) {
+        return Mono.fromSupplier(() -> {
+            ProductStock stock = products.get(productId);
+            if (stock == null) {
+                return 0L;
+            }
+            synchronized (stock) {
+                HeldQuantity held = stock.holds.remove(orderId);
+                if (held == null) {
+                    return 0L;
+                }
+                stock.available += held.quantity();
+                return (long) held.quantity();
+            }
+        });
+    }
+
+    @Override
+    public Mono<Long> commit(Long productId, Long orderId) {
+        return Mono.fromSupplier(() -> {
+            ProductStock stock = products.get(productId);
+            if (stock == null) {
+                return 0L;
+            }
+            synchronized (stock) {
+                HeldQuantity held = stock.holds.remove(orderId);
+                if (held == null) {
+                    return 0L;
+                }
+                stock.unsynced += held.quantity();
+                dirty.add(productId);
+                return (long) held.quantity();
+            }
+        });
+    }
+
+    @Override
+    public Mono<Long> unsynced(Long productId) {
+        return Mono.fromSupplier(() -> {
+            ProductStock stock = products.get(productId);
+            if (stock == null) {
+                return 0L;
+            }
+            synchronized (stock) {
+                return stock.unsynced;
+            }
+        });
+    }
+
+    @Override
+    public Mono<Long> settle(Long productId, long written, long serviceQuantity) {
+        return Mono.fromSupplier(() -> {
+            ProductStock stock = products.get(productId);
+            if (stock == null) {
+                return 0L;
+            }
+            synchronized (stock) {
+                stock.unsynced = Math.max(0, stock.unsynced - written);
+                long drift = serviceQuantity - (stock.available + held(stock) + stock.unsynced);
+                stock.available += drift;
+                return drift;
+            }
+        });
+    }
+
+    @Override
+    public Mono<String> acquireSyncLease(Long productId, Duration lease) {
+        return Mono.fromSupplier(() -> {
+            Lease claim = new Lease(UUID.randomUUID().toString(), System.nanoTime() + lease.toNanos());
+            Lease current = leases.compute(productId, (id, held) -> held == null || held.expiresAt() < System.nanoTime() ? claim : held);
+            return current == claim ? claim.token() : null;
+        });
+    }
+
+    @Override
+    public Mono<Void> releaseSyncLease(Long productId, String token) {
+        return Mono.fromRunnable(() -> leases.computeIfPresent(productId, (id, held) -> held.token().equals(token) ? null : held));
+    }
+
+    @Override
+    public Flux<Hold> expired(int limit) {
+        return Flux.defer(() -> {
+            long now = System.currentTimeMillis();
+            List<Map.Entry<Hold, Long>> expired = new ArrayList<>();
+            products.forEach((productId, stock) -> {
+                synchronized (stock) {
+                    stock.holds.forEach((orderId, held) -> {
+                        if (held.expiresAt() <= now) {
+                            expired.add(Map.entry(new Hold(productId, orderId), held.expiresAt()));
+                        }
+                    });
+                }
+            });
+            return Flux.fromStream(expired.stream()
+                    .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder()))
+                    .limit(limit)
+                    .map(Map.Entry::getKey));
+        });
+    }
+
+    @Override
+    public Mono<Long> onHand(Long productId) {
+        return Mono.fromSupplier(() -> {
+            ProductStock stock = products.get(productId);
+            if (stock == null) {
+                return null;
+            }
+            synchronized (stock) {
+                return stock.available + held(stock);
+            }
+        });
+    }
+
+    @Override
+    public Flux<Long> takeDirty(int limit) {
+        return Flux.defer(() -> {
+            List<Long> taken = new ArrayList<>();
+            for (Long productId : dirty) {
+                if (taken.size() == limit) {
+                    break;
+                }
+                if (dirty.remove(productId)) {
+                    taken.add(productId);
+                }
+            }
+            return Flux.fromIterable(taken);
+        });
+    }
+
+    @Override
+    public Mono<Void> markDirty(Long productId) {
+        return Mono.fromRunnable(() -> dirty.add(productId));
+    }
+
+    private static long held(ProductStock stock) {
+        return stock.holds.values().stream().mapToLong(HeldQuantity::quantity).sum();
+    }
+
+    private static final class ProductStock {
+
+        private long available;
+        private long unsynced;
+        private final Map<Long, HeldQuantity> holds = new LinkedHashMap<>();
+
+        private ProductStock(long available) {
+            this.available = available;
+        }
+    }
+
+    private record HeldQuantity(int quantity, long expiresAt) {
+    }
+
+    private record Lease(String token, long expiresAt) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Stand-in for Redis when running with compositor.cache.mode=local (tests, single-node runs).
+ * Every ViewCache sharing an instance behaves like a compositor node sharing one Redis.
+ */
+@Component
+@ConditionalOnProperty(name = "compositor.cache.mode", havingValue = "local")
+public class InMemoryViewStore implements ViewStore {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public Mono<byte[]> get(String key) {
+        return Mono.fromSupplier(() -> {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() < System.nanoTime()) {
+                entries.remove(key, entry);
+                return null;
+            }
+            return entry.value();
+        });
+    }
+
+    @Override
+    public Mono<Void> set(String key, byte[] value, Duration ttl) {
+        return Mono.fromRunnable(() -> entries.put(key, new Entry(value, System.nanoTime() + ttl.toNanos())));
+    }
+
+    @Override
+    public Mono<Void> delete(String key) {
+        return Mono.fromRunnable(() -> entries.remove(key));
+    }
+
+    @Override
+    public void publishInvalidation(String message) {
+        listeners.forEach(listener -> listener.accept(message));
+    }
+
+    @Override
+    public void onInvalidation(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    private record Entry(byte[] value, long expiresAt) {
+    }
+}
@@ -0,0 +1,54 @@
+package com.secor.ecomcompositorservice;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-flight count and latency EWMA for one downstream instance.
+ */
+public class InstanceLoad {
+
+    private static final double ALPHA = 0.3;
+    // AN AVERAGE THAT HAS NOT BEEN REFRESHED FADES TOWARDS ZERO, SO A ONCE-SLOW INSTANCE GETS PROBED AGAIN
+    private static final double IDLE_DECAY_NANOS = 10_000_000_000d;
+    // A FAILURE IS OFTEN FAST (CONNECTION REFUSED), SO IT IS SAMPLED AS AT LEAST THIS SLOW
+    private static final long ERROR_PENALTY_NANOS = 1_000_000_000L;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private double ewmaNanos;
+    private long lastSampleNanos;
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public void start() {
+        inFlight.incrementAndGet();
+    }
+
+    public void finish(long latencyNanos) {
+        inFlight.decrementAndGet();
+        record(latencyNanos);
+    }
+
+    public void fail(long latencyNanos) {
+        inFlight.decrementAndGet();
+        record(Math.max(latencyNanos, ERROR_PENALTY_NANOS));
+    }
+
+    // A CANCELLED CALL (E.G. A HEDGE THAT LOST) SAYS NOTHING ABOUT THE INSTANCE
+    public void abandon() {
+        inFlight.decrementAndGet();
+    }
+
+    public synchronized double getEwmaNanos() {
+        if (lastSampleNanos == 0) {
+            return 0;
+        }
+        return ewmaNanos * Math.exp(-(System.nanoTime() - lastSampleNanos) / IDLE_DECAY_NANOS);
+    }
+
+    private synchronized void record(long latencyNanos) {
+        ewmaNanos = lastSampleNanos == 0 ? latencyNanos : ewmaNanos * (1 - ALPHA) + latencyNanos * ALPHA;
+        lastSampleNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,154 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+public class InventoryBatchLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InventoryBatchLoader.class);
+    private static final Comparator<InventoryView> INVENTORY_ORDER =
+            Comparator.comparing(InventoryView::getInventoryId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    @Autowired
+    @Qualifier("inventoryWebClient")
+    WebClient inventoryWebClient;
+
+    @Value("${compositor.inventory.batch.size:100}")
+    int batchSize;
+
+    @Value("${compositor.inventory.batch.window:20ms}")
+    Duration batchWindow;
+
+    @Value("${compositor.inventory.batch.concurrency:4}")
+    int concurrency;
+
+    @Value("${compositor.inventory.batch.path:/batch}")
+    String batchPath;
+
+    @Value("${compositor.inventory.batch.reprobe-interval:1m}")
+    Duration reprobeInterval = Duration.ofMinutes(1);
+
+    // A SERVICE THAT PARSES "batch" AS A PRODUCT ID ANSWERS EVERY BATCH WITH 400, SO THIS MANY IN A ROW COUNT AS NO ENDPOINT
+    @Value("${compositor.inventory.batch.bad-request-limit:3}")
+    int badRequestLimit = 3;
+
+    private final AtomicInteger consecutiveBadRequests = new AtomicInteger();
+
+    // SET WHEN THE INVENTORY SERVICE TELLS US IT HAS NO BATCH ENDPOINT; THE ENDPOINT IS TRIED AGAIN AFTER reprobeInterval
+    private volatile long batchUnsupportedUntil;
+    private volatile boolean batchUnsupported;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Counter callsSaved;
+
+    public InventoryBatchLoader(MeterRegistry meterRegistry) {
+        this.batchSizeSummary = DistributionSummary.builder("compositor.inventory.batch.size")
+                .description("Product IDs resolved per inventory batch request")
+                .register(meterRegistry);
+        this.callsSaved = Counter.builder("compositor.inventory.batch.calls.saved")
+                .description("Inventory HTTP calls avoided by batching")
+                .register(meterRegistry);
+    }
+
+    public Flux<ProductCatalogView> joinInventory(Flux<ProductView> products) {
+        // SEQUENTIAL SO ROWS COME OUT IN CATALOG ORDER, WHICH THE PAGINATION CURSOR RELIES ON
+        return products
+                .bufferTimeout(batchSize, batchWindow)
+                .flatMapSequential(this::joinBatch, concurrency);
+    }
+
+    private Flux<ProductCatalogView> joinBatch(List<ProductView> products) {
+        List<Long> productIds = products.stream().map(ProductView::getProductId).distinct().toList();
+        return getInventories(productIds)
+                .collectMultimap(InventoryView::getProductId)
+                .flatMapIterable(inventoriesByProduct -> products.stream()
+                        // INVENTORY ID ORDER WITHIN A PRODUCT, SO A ROW-LEVEL CURSOR (productId:inventoryId) CAN RESUME
+                        .flatMap(product -> inventoriesByProduct.getOrDefault(product.getProductId(), List.of()).stream()
+                                .sorted(INVENTORY_ORDER)
+                                .map(inventory -> {
+                                    ProductCatalogView catalogView = new ProductCatalogView();
+                                    catalogView.setProduct(product);
+                                    catalogView.setInventory(inventory);
+                                    return catalogView;
+                                }))
+                        .toList());
+    }
+
+    public Flux<InventoryView> getInventories(List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Flux.empty();
+        }
+        if (productIds.size() == 1 || !batchSupported()) {
+            return getInventoriesOneByOne(productIds);
+        }
+        return inventoryWebClient.get()
+                .uri(uriBuilder -> uriBuilder.path(batchPath).queryParam("productIds", productIds).build())
+                .retrieve()
+                .bodyToFlux(InventoryView.class)
+                .doOnComplete(() -> {
+                    consecutiveBadRequests.set(0);
+                    batchSizeSummary.record(productIds.size());
+                    callsSaved.increment(productIds.size() - 1);
+                })
+                .onErrorResume(WebClientResponseException.class, error -> {
+                    // A SINGLE 400 MAY BE THIS REQUEST, SO ONLY THIS REQUEST FALLS BACK UNTIL THEY KEEP COMING
+                    if (error.getStatusCode().isSameCodeAs(HttpStatus.BAD_REQUEST)) {
+                        if (consecutiveBadRequests.incrementAndGet() >= badRequestLimit) {
+                            consecutiveBadRequests.set(0);
+                            markBatchUnsupported(error);
+                        }
+                        return getInventoriesOneByOne(productIds);
+                    }
+                    if (!isMissingBatchEndpoint(error)) {
+                        return Flux.error(error);
+                    }
+                    markBatchUnsupported(error);
+                    return getInventoriesOneByOne(productIds);
+                });
+    }
+
+    private boolean batchSupported() {
+        if (batchUnsupported && System.nanoTime() - batchUnsupportedUntil >= 0) {
+            LOG.info("Re-probing the inventory batch endpoint");
+            batchUnsupported = false;
+        }
+        return !batchUnsupported;
+    }
+
+    private void markBatchUnsupported(WebClientResponseException error) {
+        if (!batchUnsupported) {
+            LOG.warn("Inventory service has no batch endpoint ({}), falling back to per-product lookups for {}",
+                    error.getStatusCode(), reprobeInterval);
+        }
+        batchUnsupportedUntil = System.nanoTime() + reprobeInterval.toNanos();
+        batchUnsupported = true;
+    }
+
+    private Flux<InventoryView> getInventoriesOneByOne(List<Long> productIds) {
+        return Flux.fromIterable(productIds)
+                .flatMap(productId -> inventoryWebClient.get().uri("/{id}", productId).retrieve().bodyToFlux(InventoryView.class), concurrency);
+    }
+
+    private static boolean isMissingBatchEndpoint(WebClientResponseException error) {
+        return error.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)
+                || error.getStatusCode().isSameCodeAs(HttpStatus.METHOD_NOT_ALLOWED)
+                || error.getStatusCode().isSameCodeAs(HttpStatus.NOT_IMPLEMENTED);
+    }
+}
@@ -0,0 +1,230 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stock is taken when an order is created and held until its payment completes, fails or the hold times
+ * out. The check and the decrement are one atomic step in the {@link ReservationStore}, so concurrent
+ * orders for the last units cannot both win. The inventory service is brought up to date afterwards, in
+ * the background, by taking the units sold since the last write-back off its own figure; anything else
+ * that changed there (a restock, a manual correction) is folded back into the stock held here.
+ */
+@Service
+public class InventoryReservations {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InventoryReservations.class);
+
+    @Autowired
+    @Qualifier("inventoryWebClient")
+    WebClient inventoryWebClient;
+
+    @Autowired
+    ViewCache viewCache;
+
+    @Autowired
+    CatalogSnapshot catalogSnapshot;
+
+    @Value("${compositor.inventory.reservation.sweep-batch-size:500}")
+    int sweepBatchSize = 500;
+
+    @Value("${compositor.inventory.reconcile.batch-size:100}")
+    int reconcileBatchSize = 100;
+
+    // LONGER THAN A GET AND A PUT TO THE INVENTORY SERVICE EVER TAKE, SO IT ONLY LAPSES FOR A NODE THAT DIED
+    @Value("${compositor.inventory.sync-lease:30s}")
+    Duration syncLease = Duration.ofSeconds(30);
+
+    // HOW OFTEN A SOLD-OUT PRODUCT MAY ASK THE INVENTORY SERVICE WHETHER IT WAS RESTOCKED
+    @Value("${compositor.inventory.resync-interval:5s}")
+    Duration resyncInterval = Duration.ofSeconds(5);
+
+    private final ReservationStore store;
+    private final Duration ttl;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> outcomes = new ConcurrentHashMap<>();
+    private final Map<Long, Long> lastResync = new ConcurrentHashMap<>();
+
+    public InventoryReservations(ReservationStore store,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${compositor.inventory.reservation.ttl:15m}") Duration ttl) {
+        this.store = store;
+        this.meterRegistry = meterRegistry;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Holds stock for the order, seeding the product from {@code stockOnHand} the first time it is seen.
+     * Fails with {@link InsufficientInventoryException} when there is not enough left.
+     */
+    public Mono<Void> reserve(Long productId, Long orderId, int quantity, Mono<Integer> stockOnHand) {
+        return store.reserve(productId, orderId, quantity, ttl)
+                .flatMap(left -> left != ReservationStore.NOT_SEEDED ? Mono.just(left)
+                        : stockOnHand.flatMap(onHand -> store.seed(productId, onHand))
+                                .then(store.reserve(productId, orderId, quantity, ttl)))
+                // STOCK ADDED ON THE INVENTORY SERVICE ONLY REACHES US THROUGH A RESYNC
+                .flatMap(left -> left != ReservationStore.INSUFFICIENT ? Mono.just(left)
+                        : resync(productId)
+                                .flatMap(adjustment -> adjustment > 0 ? store.reserve(productId, orderId, quantity, ttl) : Mono.just(left))
+                                .defaultIfEmpty(left))
+                .flatMap(left -> {
+                    if (left < 0) {
+                        count("insufficient");
+                        LOG.error("Insufficient inventory for product ID: {}", productId);
+                        return Mono.error(new InsufficientInventoryException(productId));
+                    }
+                    count("reserved");
+                    return Mono.empty();
+                });
+    }
+
+    public Mono<Void> release(Long productId, Long orderId) {
+        return store.release(productId, orderId)
+                .doOnNext(released -> {
+                    if (released > 0) {
+                        count("released");
+                    }
+                })
+                .then();
+    }
+
+    public Mono<Void> commit(Long productId, Long orderId) {
+        return store.commit(productId, orderId)
+                .doOnNext(committed -> {
+                    if (committed > 0) {
+                        count("committed");
+                    }
+                })
+                .then();
+    }
+
+    @Scheduled(fixedDelayString = "${compositor.inventory.reservation.sweep-interval-ms:5000}")
+    public void releaseExpired() {
+        store.expired(sweepBatchSize)
+                .concatMap(hold -> store.release(hold.productId(), hold.orderId())
+                        .doOnNext(released -> {
+                            if (released > 0) {
+                                count("expired");
+                                LOG.info("Reservation of order {} on product {} expired", hold.orderId(), hold.productId());
+                            }
+                        }))
+                .onErrorResume(error -> {
+                    LOG.warn("Could not release expired reservations, will retry: {}", error.toString());
+                    return Mono.empty();
+                })
+                .blockLast();
+    }
+
+    @Scheduled(fixedDelayString = "${compositor.inventory.reconcile.interval-ms:1000}")
+    public void reconcile() {
+        store.takeDirty(reconcileBatchSize)
+                .concatMap(productId -> writeBack(productId)
+                        .onErrorResume(error -> {
+                            LOG.warn("Could not reconcile inventory of product {}, will retry: {}", productId, error.toString());
+                            return store.markDirty(productId);
+                        }))
+                .onErrorResume(error -> {
+                    LOG.warn("Could not reconcile inventory: {}", error.toString());
+                    return Mono.empty();
+                })
+                .blockLast();
+    }
+
+    // A PRODUCT ANOTHER NODE IS SYNCING GOES BACK ON THE DIRTY SET, SO SALES COMMITTED AFTER IT READ THE
+    // UNSYNCED COUNT ARE PICKED UP ON A LATER TICK
+    private Mono<Void> writeBack(Long productId) {
+        return withSyncLease(productId, syncWriteBack(productId))
+                .switchIfEmpty(store.markDirty(productId).then(Mono.empty()))
+                .then();
+    }
+
+    // ONLY THE UNITS SOLD SINCE THE LAST WRITE-BACK ARE TAKEN OFF THE SERVICE'S CURRENT FIGURE, SO A RESTOCK MADE
+    // THERE IN THE MEANTIME SURVIVES; SALES COMMITTED WHILE THIS RUNS STAY UNSYNCED AND QUEUE THE PRODUCT AGAIN
+    private Mono<Boolean> syncWriteBack(Long productId) {
+        return store.unsynced(productId)
+                .filter(sold -> sold > 0)
+                .flatMap(sold -> currentInventory(productId)
+                        .flatMap(inventory -> {
+                            InventoryView updated = new InventoryView();
+                            updated.setInventoryId(inventory.getInventoryId());
+                            updated.setProductId(productId);
+                            updated.setQuantity((int) (inventory.getQuantity() - sold));
+                            updated.setLastUpdated(LocalDateTime.now());
+                            return inventoryWebClient.put().uri("/{id}", inventory.getInventoryId())
+                                    .bodyValue(updated)
+                                    .retrieve()
+                                    .toBodilessEntity()
+                                    .doOnSuccess(response -> catalogSnapshot.updateInventory(updated))
+                                    .then(settle(productId, sold, updated.getQuantity()));
+                        }))
+                .then(viewCache.evict(CachedView.INVENTORY, productId))
+                .thenReturn(true);
+    }
+
+    // EMPTY, WITHOUT RUNNING THE SYNC, WHILE ANOTHER WRITE-BACK OR RESYNC OF THE PRODUCT HOLDS THE LEASE
+    private <T> Mono<T> withSyncLease(Long productId, Mono<T> sync) {
+        return Mono.usingWhen(store.acquireSyncLease(productId, syncLease),
+                token -> sync,
+                token -> store.releaseSyncLease(productId, token),
+                (token, error) -> store.releaseSyncLease(productId, token),
+                token -> store.releaseSyncLease(productId, token));
+    }
+
+    private Mono<Long> resync(Long productId) {
+        long now = System.nanoTime();
+        Long last = lastResync.get(productId);
+        if (last != null && now - last < resyncInterval.toNanos()) {
+            return Mono.empty();
+        }
+        lastResync.put(productId, now);
+        return withSyncLease(productId, currentInventory(productId)
+                        .flatMap(inventory -> settle(productId, 0, inventory.getQuantity())))
+                .onErrorResume(error -> {
+                    LOG.warn("Could not resync inventory of product {}: {}", productId, error.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Long> settle(Long productId, long written, long serviceQuantity) {
+        return store.settle(productId, written, serviceQuantity)
+                .doOnNext(adjustment -> {
+                    if (adjustment != 0) {
+                        count("adjusted");
+                        LOG.info("Stock of product {} moved by {} to match the inventory service", productId, adjustment);
+                    }
+                });
+    }
+
+    // STRAIGHT FROM THE SERVICE, NOT THE VIEW CACHE: A STALE FIGURE HERE WOULD BE TAKEN FOR A RESTOCK
+    private Mono<InventoryView> currentInventory(Long productId) {
+        return inventoryWebClient.get().uri("/{id}", productId).retrieve().bodyToFlux(InventoryView.class).next();
+    }
+
+    private void count(String result) {
+        outcomes.computeIfAbsent(result, key -> Counter.builder("compositor.inventory.reservations")
+                .description("Stock reservations by outcome")
+                .tag("result", key)
+                .register(meterRegistry)).increment();
+    }
+
+    public static class InsufficientInventoryException extends RuntimeException {
+
+        public InsufficientInventoryException(Long productId) {
+            super("Insufficient inventory for product ID: " + productId);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.List;
+
+public interface LoadBalancerStrategy {
+
+    ServiceInstance choose(List<ServiceInstance> instances, ServiceInstanceRegistry registry);
+
+    static LoadBalancerStrategy named(String name) {
+        return switch (name) {
+            case "round-robin" -> new RoundRobinStrategy();
+            case "least-in-flight" -> new PowerOfTwoChoicesStrategy();
+            case "ewma" -> new EwmaLatencyStrategy();
+            default -> throw new IllegalArgumentException("Unknown load balancer strategy: " + name);
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resolves the logical host of a request (http://ecom-catalog-service/...) to a concrete instance,
+ * picked per request so that retries and new requests spread over the whole instance list.
+ */
+public class LoadBalancingExchangeFilter implements ExchangeFilterFunction {
+
+    private final String serviceName;
+    private final ServiceInstanceRegistry registry;
+    private final LoadBalancerStrategy strategy;
+
+    public LoadBalancingExchangeFilter(String serviceName, ServiceInstanceRegistry registry, LoadBalancerStrategy strategy) {
+        this.serviceName = serviceName;
+        this.registry = registry;
+        this.strategy = strategy;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            List<ServiceInstance> instances = registry.getInstances(serviceName);
+            if (instances.isEmpty()) {
+                return Mono.error(new IllegalStateException("No instances found for " + serviceName));
+            }
+            ServiceInstance instance = strategy.choose(instances, registry);
+            InstanceLoad load = registry.loadOf(instance);
+            ClientRequest resolved = ClientRequest.from(request).url(resolve(request.url(), instance)).build();
+
+            long start = System.nanoTime();
+            AtomicBoolean settled = new AtomicBoolean();
+            load.start();
+            // ONLY ANSWERED REQUESTS FEED THE LATENCY AVERAGE AS-IS; FAILURES ARE PENALISED, CANCELS IGNORED
+            return next.exchange(resolved)
+                    .doOnNext(response -> {
+                        if (settled.compareAndSet(false, true)) {
+                            if (response.statusCode().is5xxServerError()) {
+                                load.fail(System.nanoTime() - start);
+                            } else {
+                                load.finish(System.nanoTime() - start);
+                            }
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (settled.compareAndSet(false, true)) {
+                            load.fail(System.nanoTime() - start);
+                        }
+                    })
+                    .doFinally(signal -> {
+                        if (settled.compareAndSet(false, true)) {
+                            load.abandon();
+                        }
+                    });
+        });
+    }
+
+    private static URI resolve(URI logical, ServiceInstance instance) {
+        return UriComponentsBuilder.fromUri(logical)
+                .scheme(instance.isSecure() ? "https" : "http")
+                .host(instance.getHost())
+                .port(instance.getPort())
+                .build(true)
+                .toUri();
+    }
+}
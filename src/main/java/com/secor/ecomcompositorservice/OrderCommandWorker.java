@@ -0,0 +1,80 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+
+/**
+ * Runs accepted processPayment commands. Each listener thread owns whole partitions, so commands for one
+ * order are handled one after another while compositor.orders.async.workers threads bound the parallelism.
+ * A command that keeps failing is retried with backoff and then dead-lettered (see
+ * {@link OrderCommandsConfig}); one that can never succeed is marked REJECTED straight away.
+ */
+@Component
+public class OrderCommandWorker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderCommandWorker.class);
+
+    @Autowired
+    CompositorController compositorController;
+
+    @Autowired
+    OrderCommands orderCommands;
+
+    @Value("${compositor.orders.async.timeout:30s}")
+    Duration timeout = Duration.ofSeconds(30);
+
+    private final Timer processing;
+
+    public OrderCommandWorker(MeterRegistry meterRegistry) {
+        this.processing = Timer.builder("compositor.orders.async.processing")
+                .description("Time to complete one accepted processPayment command")
+                .register(meterRegistry);
+    }
+
+    @KafkaListener(id = "order-command-workers",
+            topics = OrderCommands.ORDER_COMMANDS_TOPIC,
+            groupId = "${spring.application.name}-order-workers",
+            concurrency = "${compositor.orders.async.workers:4}",
+            containerFactory = "orderCommandContainerFactory",
+            autoStartup = "${compositor.orders.async.workers.enabled:true}")
+    public void onCommand(ConsumerRecord<String, String> record) {
+        Long orderId = Long.valueOf(record.value());
+        // A REDELIVERY AFTER THE ORDER WENT THROUGH MUST NOT TURN ITS STATUS BACK
+        OrderCommands.Status current = orderCommands.status(orderId).block(timeout);
+        if (current != null && OrderCommands.COMPLETED.equals(current.status())) {
+            LOG.debug("Order ID: {} already completed, skipping redelivered command", orderId);
+            return;
+        }
+        orderCommands.mark(orderId, OrderCommands.PROCESSING, null).block(timeout);
+        processing.record(() -> process(orderId));
+    }
+
+    private void process(Long orderId) {
+        try {
+            String result = compositorController.processOrder(orderId).block(timeout);
+            if (result == null) {
+                orderCommands.mark(orderId, OrderCommands.REJECTED, "Order ID: " + orderId + " is not awaiting payment").block(timeout);
+            } else {
+                orderCommands.mark(orderId, OrderCommands.COMPLETED, null).block(timeout);
+            }
+        } catch (InventoryReservations.InsufficientInventoryException e) {
+            orderCommands.mark(orderId, OrderCommands.REJECTED, e.getMessage()).block(timeout);
+        } catch (WebClientResponseException e) {
+            // A 4XX WILL NOT CHANGE ON RETRY; ANYTHING ELSE GOES BACK TO THE ERROR HANDLER
+            if (!e.getStatusCode().is4xxClientError()) {
+                throw e;
+            }
+            orderCommands.mark(orderId, OrderCommands.REJECTED, e.getMessage()).block(timeout);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Accepting side of asynchronous order processing: a processPayment command goes onto
+ * {@value #ORDER_COMMANDS_TOPIC}, keyed by order ID so every command for one order lands on one partition
+ * and is handled in order, and {@link OrderCommandWorker} completes it. Progress is kept in the shared
+ * view store so any node can answer the status URL.
+ */
+@Service
+public class OrderCommands {
+
+    public static final String ORDER_COMMANDS_TOPIC = "ecom-order-commands";
+
+    public static final String ACCEPTED = "ACCEPTED";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String REJECTED = "REJECTED";
+    public static final String FAILED = "FAILED";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ViewStore viewStore;
+    private final String keyPrefix;
+    private final Duration statusTtl;
+    private final Duration sendTimeout;
+
+    public OrderCommands(KafkaTemplate<String, String> kafkaTemplate,
+                         ViewStore viewStore,
+                         @Value("${compositor.cache.key-prefix:compositor:v1}") String keyPrefix,
+                         @Value("${compositor.orders.async.status-ttl:1h}") Duration statusTtl,
+                         @Value("${compositor.orders.async.send-timeout:5s}") Duration sendTimeout) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.viewStore = viewStore;
+        this.keyPrefix = keyPrefix;
+        this.statusTtl = statusTtl;
+        this.sendTimeout = sendTimeout;
+    }
+
+    /**
+     * Completes once Kafka has the command, so an accepted order is never lost with this node. An order that
+     * already completed keeps its status and is not queued again.
+     */
+    public Mono<Void> submit(Long orderId) {
+        return status(orderId)
+                .filter(current -> COMPLETED.equals(current.status()))
+                .hasElement()
+                .flatMap(completed -> completed ? Mono.<Void>empty() : mark(orderId, ACCEPTED, null)
+                        .then(Mono.defer(() -> Mono.fromFuture(kafkaTemplate.send(ORDER_COMMANDS_TOPIC, String.valueOf(orderId), String.valueOf(orderId))))
+                                .timeout(sendTimeout))
+                        .then());
+    }
+
+    public Mono<Status> status(Long orderId) {
+        return viewStore.get(key(orderId)).map(value -> Status.decode(orderId, value));
+    }
+
+    public Mono<Void> mark(Long orderId, String status, String message) {
+        return viewStore.set(key(orderId), new Status(orderId, status, message).encode(), statusTtl);
+    }
+
+    private String key(Long orderId) {
+        return keyPrefix + ":order-command:" + orderId;
+    }
+
+    public record Status(Long orderId, String status, String message) {
+
+        byte[] encode() {
+            return (message == null ? status : status + "\n" + message).getBytes(StandardCharsets.UTF_8);
+        }
+
+        static Status decode(Long orderId, byte[] value) {
+            String[] parts = new String(value, StandardCharsets.UTF_8).split("\n", 2);
+            return new Status(orderId, parts[0], parts.length > 1 ? parts[1] : null);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.secor.ecomcompositorservice;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
+
+import java.time.Duration;
+
+/**
+ * Listener container for {@link OrderCommandWorker}. A failing command is retried in place with
+ * exponential backoff - the partition waits, so later commands for the same order cannot overtake it - and
+ * then marked FAILED and published to {@value #DEAD_LETTER_TOPIC}.
+ */
+@Configuration
+public class OrderCommandsConfig {
+
+    public static final String DEAD_LETTER_TOPIC = OrderCommands.ORDER_COMMANDS_TOPIC + ".DLT";
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderCommandsConfig.class);
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> orderCommandContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            KafkaTemplate<String, String> kafkaTemplate,
+            OrderCommands orderCommands,
+            @Value("${compositor.orders.async.retries:3}") int retries,
+            @Value("${compositor.orders.async.retry-backoff:500ms}") Duration retryBackoff,
+            @Value("${compositor.orders.async.max-poll-records:20}") int maxPollRecords,
+            @Value("${compositor.orders.async.max-poll-interval:5m}") Duration maxPollInterval,
+            @Value("${compositor.orders.async.timeout:30s}") Duration timeout) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        // EVERY RECORD MAY TAKE UP TO THE PROCESSING TIMEOUT AND A FAILED ONE SLEEPS THROUGH A BACKOFF BEFORE THE
+        // NEXT POLL, SO A POLL IS CAPPED AT WHAT STILL FITS INSIDE max.poll.interval.ms
+        Duration longestBackoff = retryBackoff.multipliedBy(1L << Math.max(0, retries - 1));
+        int recordsPerPoll = pollRecords(maxPollRecords, maxPollInterval, timeout, longestBackoff);
+        if (recordsPerPoll < maxPollRecords) {
+            LOG.info("Polling {} order commands at a time so {} each fits in a {} poll interval", recordsPerPoll, timeout, maxPollInterval);
+        }
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(recordsPerPoll));
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, String.valueOf(maxPollInterval.toMillis()));
+
+        DeadLetterPublishingRecoverer deadLetter = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (record, exception) -> new TopicPartition(DEAD_LETTER_TOPIC, record.partition()));
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(retries);
+        backOff.setInitialInterval(retryBackoff.toMillis());
+        backOff.setMultiplier(2.0);
+        factory.setCommonErrorHandler(new DefaultErrorHandler((record, exception) -> {
+            Long orderId = Long.valueOf(String.valueOf(record.value()));
+            Throwable cause = exception.getCause() != null ? exception.getCause() : exception;
+            LOG.error("Order ID: {} failed after {} retries, dead-lettering: {}", orderId, retries, cause.toString());
+            orderCommands.mark(orderId, OrderCommands.FAILED, cause.getMessage()).block(Duration.ofSeconds(5));
+            deadLetter.accept(record, exception);
+        }, backOff));
+        return factory;
+    }
+
+    static int pollRecords(int maxPollRecords, Duration maxPollInterval, Duration timeout, Duration longestBackoff) {
+        long fitting = maxPollInterval.minus(longestBackoff).toMillis() / Math.max(1, timeout.toMillis());
+        return (int) Math.max(1, Math.min(maxPollRecords, fitting));
+    }
+}
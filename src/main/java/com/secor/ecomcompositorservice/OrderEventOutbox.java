@@ -0,0 +1,55 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write side of the outbox: one INSERT per event on the request path. {@link OutboxRelay} ships
+ * the rows to Kafka in the background, so a slow broker never holds up an order.
+ */
+@Service
+public class OrderEventOutbox {
+
+    public static final String ORDER_EVENTS_TOPIC = "ecom-order-events";
+
+    @Autowired
+    OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    BlockingExecution blockingExecution;
+
+    public Mono<Void> record(Long orderId, String description) {
+        return blockingExecution.call(() -> outboxEventRepository.save(toEvent(orderId, description)))
+                .then();
+    }
+
+    // SEVERAL EVENTS OF ONE ORDER GO IN AS ONE BATCH, IN THE ORDER GIVEN
+    public Mono<Void> record(Long orderId, List<String> descriptions) {
+        return blockingExecution.call(() -> {
+            List<OutboxEvent> events = new ArrayList<>(descriptions.size());
+            for (String description : descriptions) {
+                events.add(toEvent(orderId, description));
+            }
+            return outboxEventRepository.saveAll(events);
+        }).then();
+    }
+
+    private OutboxEvent toEvent(Long orderId, String description) throws JsonProcessingException {
+        OutboxEvent event = new OutboxEvent();
+        event.setTopic(ORDER_EVENTS_TOPIC);
+        event.setAggregateId(String.valueOf(orderId));
+        event.setPayload(objectMapper.writeValueAsString(Analytic.update(String.valueOf(orderId), description)));
+        event.setCreatedAt(LocalDateTime.now());
+        return event;
+    }
+}
@@ -0,0 +1,31 @@
+package com.secor.ecomcompositorservice;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "outbox_event")
+@Getter @Setter
+public class OutboxEvent {
+    // IDENTITY ORDER IS PUBLISH ORDER
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String topic;
+    // KAFKA KEY, SO ALL EVENTS OF ONE ORDER LAND ON ONE PARTITION
+    private String aggregateId;
+
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,15 @@
+package com.secor.ecomcompositorservice;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // ROW LOCKS KEEP TWO RELAYS FROM SHIPPING THE SAME BATCH, AND SO FROM REORDERING AN ORDER'S EVENTS
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<OutboxEvent> findByOrderByIdAsc(Limit limit);
+}
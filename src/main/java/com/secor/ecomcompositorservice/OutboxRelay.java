@@ -0,0 +1,122 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Drains the outbox to Kafka in large batches, through the {@link Producer} pipeline. Rows are locked while a batch is in flight and only
+ * deleted once Kafka acknowledged them, so delivery is at-least-once. Events are keyed by order ID and
+ * an order's next event is only sent once the previous one was acknowledged, so they stay ordered per
+ * order across retries.
+ */
+@Component
+@ConditionalOnProperty(name = "compositor.outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final Producer producer;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${compositor.outbox.relay.batch-size:1000}")
+    int batchSize = 1000;
+
+    @Value("${compositor.outbox.relay.send-timeout-ms:10000}")
+    long sendTimeoutMs = 10000;
+
+    private final Counter relayed;
+    private final Counter failed;
+    private final Timer batchTimer;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       Producer producer,
+                       PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.producer = producer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.relayed = Counter.builder("compositor.outbox.relayed").description("Outbox events acknowledged by Kafka").register(meterRegistry);
+        this.failed = Counter.builder("compositor.outbox.failed").description("Outbox events left for the next attempt").register(meterRegistry);
+        this.batchTimer = Timer.builder("compositor.outbox.batch").description("Time to relay one outbox batch").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${compositor.outbox.relay.interval-ms:200}")
+    public void relay() {
+        // KEEP GOING WHILE BATCHES COME BACK FULL, SO A BACKLOG IS CLEARED IN ONE TICK
+        int shipped;
+        do {
+            shipped = batchTimer.record(() -> transactionTemplate.execute(status -> relayBatch()));
+        } while (shipped == batchSize);
+    }
+
+    private int relayBatch() {
+        List<OutboxEvent> batch = outboxEventRepository.findByOrderByIdAsc(Limit.of(batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Map<String, List<OutboxEvent>> byAggregate = new LinkedHashMap<>();
+        for (OutboxEvent event : batch) {
+            byAggregate.computeIfAbsent(event.getAggregateId(), aggregateId -> new ArrayList<>()).add(event);
+        }
+
+        // EACH ROUND SENDS THE NEXT EVENT OF EVERY ORDER, SO ONE ORDER'S EVENTS GO OUT ONE AT A TIME, EACH ONLY
+        // AFTER THE PREVIOUS WAS ACKNOWLEDGED; AN ORDER WHOSE EVENT FAILED SENDS NOTHING MORE UNTIL THE NEXT ATTEMPT
+        List<OutboxEvent> delivered = new ArrayList<>(batch.size());
+        List<List<OutboxEvent>> pending = new ArrayList<>(byAggregate.values());
+        for (int round = 0; !pending.isEmpty(); round++) {
+            List<CompletableFuture<?>> sends = new ArrayList<>(pending.size());
+            for (List<OutboxEvent> events : pending) {
+                OutboxEvent event = events.get(round);
+                sends.add(producer.send(event.getTopic(), event.getAggregateId(), event.getPayload()));
+            }
+            List<List<OutboxEvent>> next = new ArrayList<>(pending.size());
+            for (int i = 0; i < pending.size(); i++) {
+                List<OutboxEvent> events = pending.get(i);
+                if (await(sends.get(i), events.get(round))) {
+                    delivered.add(events.get(round));
+                    if (events.size() > round + 1) {
+                        next.add(events);
+                    }
+                }
+            }
+            pending = next;
+        }
+        outboxEventRepository.deleteAllInBatch(delivered);
+        relayed.increment(delivered.size());
+        failed.increment(batch.size() - delivered.size());
+        return delivered.size() == batch.size() ? batch.size() : 0;
+    }
+
+    private boolean await(CompletableFuture<?> send, OutboxEvent event) {
+        try {
+            send.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.warn("Outbox event {} for {} not delivered, will retry: {}", event.getId(), event.getAggregateId(), e.toString());
+            return false;
+        }
+    }
+}
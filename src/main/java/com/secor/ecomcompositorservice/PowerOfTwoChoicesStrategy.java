@@ -0,0 +1,34 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples two instances at random and keeps the less loaded one. Nearly as good as scanning
+ * every instance, without every compositor node herding onto the same "best" one.
+ */
+public class PowerOfTwoChoicesStrategy implements LoadBalancerStrategy {
+
+    @Override
+    public ServiceInstance choose(List<ServiceInstance> instances, ServiceInstanceRegistry registry) {
+        int size = instances.size();
+        if (size == 1) {
+            return instances.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceInstance a = instances.get(first);
+        ServiceInstance b = instances.get(second);
+        return cost(a, registry) <= cost(b, registry) ? a : b;
+    }
+
+    protected double cost(ServiceInstance instance, ServiceInstanceRegistry registry) {
+        return registry.loadOf(instance).getInFlight();
+    }
+}
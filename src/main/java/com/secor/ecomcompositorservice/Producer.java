@@ -1,43 +1,154 @@
 package com.secor.ecomcompositorservice;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalTime;
-import java.util.Random;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Events are queued in a bounded buffer and a single publisher thread hands them to Kafka in batches, so
+ * the caller only pays for an enqueue. {@link OutboxRelay} sends every order event through here and
+ * waits on the returned future for Kafka's acknowledgement. Kafka-side batching (linger.ms, batch.size,
+ * compression.type) is tuned through spring.kafka.producer.* in application.properties.
+ */
 @Service
 public class Producer
 {
     private static final Logger logger = LoggerFactory.getLogger(Producer.class);
-    private static final String TOPIC = "ecom-order-events";
 
     @Autowired //DEPENDENCY INJECTION PROMISE FULFILLED AT RUNTIME
-    private KafkaTemplate<String, String> kafkaTemplate ;
+    KafkaTemplate<String, String> kafkaTemplate ;
 
     @Autowired
-    ObjectMapper objectMapper;
+    MeterRegistry meterRegistry;
 
-    public void publishMessage(String principal,
-                                            String description) throws JsonProcessingException // LOGIN | REGISTER
-    {
-        Analytic analytic = new Analytic();
-        analytic.setObjectid(String.valueOf((new Random()).nextInt()));
-        analytic.setType("UPDATE");
-        analytic.setPrincipal(principal);
-        analytic.setDescription(description);
-        analytic.setTimestamp(LocalTime.now()); // SETTING THE TIMESTAMP OF THE MESSAGE
+    @Value("${compositor.events.buffer-capacity:10000}")
+    int bufferCapacity = 10000;
 
-        // convert to JSON
-        String datum =  objectMapper.writeValueAsString(analytic);
+    @Value("${compositor.events.batch-size:500}")
+    int batchSize = 500;
 
-        logger.info(String.format("Kafka_eCom -> Producing message -> %s", datum));
-        this.kafkaTemplate.send(TOPIC,datum);
+    @Value("${compositor.events.linger:20ms}")
+    Duration linger = Duration.ofMillis(20);
+
+    // HOW LONG A CALLER WAITS FOR ROOM IN A FULL BUFFER BEFORE THE EVENT IS REJECTED
+    @Value("${compositor.events.enqueue-timeout:100ms}")
+    Duration enqueueTimeout = Duration.ofMillis(100);
+
+    private BlockingQueue<Outgoing> buffer;
+    private Thread publisherThread;
+    private volatile boolean running;
+
+    private Counter published;
+    private Counter failed;
+    private Counter rejected;
+
+    @PostConstruct
+    public void start() {
+        buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        published = Counter.builder("compositor.events.published").description("Events acknowledged by Kafka").register(meterRegistry);
+        failed = Counter.builder("compositor.events.failed").description("Events Kafka failed to accept").register(meterRegistry);
+        rejected = Counter.builder("compositor.events.rejected").description("Events refused because the buffer was full").register(meterRegistry);
+        Gauge.builder("compositor.events.buffered", buffer, BlockingQueue::size).description("Events waiting to be sent").register(meterRegistry);
+
+        running = true;
+        publisherThread = new Thread(this::drain, "kafka-event-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
     }
 
+    /**
+     * Queues an already serialized event. The future completes once Kafka acknowledged it, and fails with
+     * {@link EventBufferFullException} when the buffer stayed full for the enqueue timeout.
+     */
+    public CompletableFuture<Void> send(String topic, String key, String payload) {
+        Outgoing outgoing = new Outgoing(topic, key, payload, new CompletableFuture<>());
+        try {
+            if (!buffer.offer(outgoing, enqueueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                return CompletableFuture.failedFuture(new EventBufferFullException());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return outgoing.acknowledged();
+    }
+
+    private void drain() {
+        List<Outgoing> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                Outgoing first = buffer.poll(linger.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                batch.forEach(this::publish);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void publish(Outgoing outgoing) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Kafka_eCom -> Producing message -> {}", outgoing.payload());
+        }
+        try {
+            this.kafkaTemplate.send(outgoing.topic(), outgoing.key(), outgoing.payload()).whenComplete((result, error) -> {
+                if (error == null) {
+                    published.increment();
+                    outgoing.acknowledged().complete(null);
+                } else {
+                    delivered(outgoing, error);
+                }
+            });
+        } catch (RuntimeException e) {
+            // THE PRODUCER CAN ALSO REFUSE A RECORD OUTRIGHT (BUFFER FULL, METADATA TIMEOUT)
+            delivered(outgoing, e);
+        }
+    }
+
+    private void delivered(Outgoing outgoing, Throwable error) {
+        failed.increment();
+        logger.warn("Kafka_eCom -> Delivery failed for {}: {}", outgoing.key(), error.toString());
+        outgoing.acknowledged().completeExceptionally(error);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        publisherThread.join(TimeUnit.SECONDS.toMillis(5));
+        kafkaTemplate.flush();
+    }
+
+    private record Outgoing(String topic, String key, String payload, CompletableFuture<Void> acknowledged) {
+    }
+
+    public static class EventBufferFullException extends RuntimeException {
+
+        public EventBufferFullException() {
+            super("Event buffer is full");
+        }
+    }
 }
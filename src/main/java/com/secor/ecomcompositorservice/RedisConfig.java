@@ -1,26 +1,47 @@
 package com.secor.ecomcompositorservice;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 @Configuration
 public class RedisConfig {
 
+    @Autowired
+    BlockingExecution blockingExecution;
+
     @Bean
     public JedisConnectionFactory jedisConnectionFactory() {
         RedisStandaloneConfiguration redisStandaloneConfiguration = new RedisStandaloneConfiguration();
         redisStandaloneConfiguration.setHostName("localhost");
         redisStandaloneConfiguration.setPort(6379);
-        return new JedisConnectionFactory(redisStandaloneConfiguration);
+        // EVERY COMMAND BORROWS A CONNECTION FIRST, SO THIS CATCHES ANY JEDIS CALL MADE ON AN EVENT LOOP
+        return new JedisConnectionFactory(redisStandaloneConfiguration) {
+            @Override
+            public RedisConnection getConnection() {
+                blockingExecution.checkBlockingAllowed("redis");
+                return super.getConnection();
+            }
+        };
     }
 
-    @Bean
-    public RedisTemplate<String, Object> redisTemplate() {
-        RedisTemplate<String, Object> template = new RedisTemplate<>();
+    @Bean("viewRedisTemplate")
+    public RedisTemplate<String, byte[]> viewRedisTemplate() {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
         template.setConnectionFactory(jedisConnectionFactory());
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
         return template;
     }
-}
\ No newline at end of file
+
+    @Bean
+    public StringRedisTemplate stringRedisTemplate() {
+        return new StringRedisTemplate(jedisConnectionFactory());
+    }
+}
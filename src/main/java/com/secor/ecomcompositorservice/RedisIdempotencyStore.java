@@ -0,0 +1,68 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component
+@ConditionalOnProperty(name = "compositor.cache.mode", havingValue = "redis", matchIfMissing = true)
+public class RedisIdempotencyStore implements IdempotencyStore {
+
+    private static final String PREFIX = "compositor:v1:idempotency:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final BlockingExecution blockingExecution;
+
+    public RedisIdempotencyStore(StringRedisTemplate redisTemplate, BlockingExecution blockingExecution) {
+        this.redisTemplate = redisTemplate;
+        this.blockingExecution = blockingExecution;
+    }
+
+    @Override
+    public Mono<Boolean> claim(String key, String fingerprint, Duration lease) {
+        return blockingExecution.call(() -> redisTemplate.opsForValue().setIfAbsent(PREFIX + key, encode(Entry.inProgress(fingerprint)), lease));
+    }
+
+    @Override
+    public Mono<Entry> get(String key) {
+        return blockingExecution.call(() -> redisTemplate.opsForValue().get(PREFIX + key))
+                .map(RedisIdempotencyStore::decode);
+    }
+
+    @Override
+    public Mono<Void> complete(String key, Entry entry, Duration ttl) {
+        return blockingExecution.run(() -> redisTemplate.opsForValue().set(PREFIX + key, encode(entry), ttl));
+    }
+
+    @Override
+    public Mono<Void> release(String key) {
+        return blockingExecution.run(() -> redisTemplate.delete(PREFIX + key));
+    }
+
+    // "<fingerprint>\n<status>\n<header count>\n<name>: <value>\n...<body>" - ONLY THE BODY MAY CONTAIN A NEWLINE
+    private static String encode(Entry entry) {
+        StringBuilder value = new StringBuilder()
+                .append(entry.fingerprint()).append('\n')
+                .append(entry.status()).append('\n')
+                .append(entry.headers().size()).append('\n');
+        entry.headers().forEach((name, header) -> value.append(name).append(": ").append(header).append('\n'));
+        return value.append(entry.body() == null ? "" : entry.body()).toString();
+    }
+
+    private static Entry decode(String value) {
+        String[] parts = value.split("\n", 4);
+        int headerCount = Integer.parseInt(parts[2]);
+        String[] rest = parts[3].split("\n", headerCount + 1);
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            int colon = rest[i].indexOf(": ");
+            headers.put(rest[i].substring(0, colon), rest[i].substring(colon + 2));
+        }
+        return new Entry(parts[0], Integer.parseInt(parts[1]), headers, rest[headerCount]);
+    }
+}
@@ -0,0 +1,201 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps each product's available stock and its holds under one hash tag, so a reservation is a single
+ * Lua script on one slot and products never contend with each other. The expiry index and the dirty set
+ * span products and are therefore written outside the scripts; a crash in between at worst leaves an
+ * index entry pointing at a hold that is already gone, which the sweeper skips.
+ */
+@Component
+@ConditionalOnProperty(name = "compositor.cache.mode", havingValue = "redis", matchIfMissing = true)
+public class RedisReservationStore implements ReservationStore {
+
+    private static final String PREFIX = "compositor:v1:";
+    private static final String EXPIRY_KEY = PREFIX + "reservation-expiry";
+    private static final String DIRTY_KEY = PREFIX + "reservation-dirty";
+
+    // KEYS[1] STOCK, KEYS[2] HOLDS; ARGV[1] ORDER ID, ARGV[2] QUANTITY
+    private static final RedisScript<Long> RESERVE = new DefaultRedisScript<>("""
+            local stock = redis.call('GET', KEYS[1])
+            if not stock then return -2 end
+            if redis.call('HEXISTS', KEYS[2], ARGV[1]) == 1 then return tonumber(stock) end
+            local quantity = tonumber(ARGV[2])
+            if tonumber(stock) < quantity then return -1 end
+            redis.call('HSET', KEYS[2], ARGV[1], quantity)
+            return redis.call('DECRBY', KEYS[1], quantity)
+            """, Long.class);
+
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>("""
+            local held = redis.call('HGET', KEYS[2], ARGV[1])
+            if not held then return 0 end
+            redis.call('HDEL', KEYS[2], ARGV[1])
+            redis.call('INCRBY', KEYS[1], held)
+            return tonumber(held)
+            """, Long.class);
+
+    // KEYS[3] UNSYNCED
+    private static final RedisScript<Long> COMMIT = new DefaultRedisScript<>("""
+            local held = redis.call('HGET', KEYS[2], ARGV[1])
+            if not held then return 0 end
+            redis.call('HDEL', KEYS[2], ARGV[1])
+            redis.call('INCRBY', KEYS[3], held)
+            return tonumber(held)
+            """, Long.class);
+
+    // ARGV[1] UNITS WRITTEN BACK, ARGV[2] THE SERVICE'S FIGURE AFTER THE WRITE
+    private static final RedisScript<Long> SETTLE = new DefaultRedisScript<>("""
+            local stock = redis.call('GET', KEYS[1])
+            if not stock then return 0 end
+            local unsynced = redis.call('DECRBY', KEYS[3], ARGV[1])
+            if unsynced < 0 then
+                redis.call('SET', KEYS[3], 0)
+                unsynced = 0
+            end
+            local total = tonumber(stock) + unsynced
+            for _, held in ipairs(redis.call('HVALS', KEYS[2])) do total = total + tonumber(held) end
+            local drift = tonumber(ARGV[2]) - total
+            if drift ~= 0 then redis.call('INCRBY', KEYS[1], drift) end
+            return drift
+            """, Long.class);
+
+    // KEYS[1] SYNC LEASE; ARGV[1] TOKEN
+    private static final RedisScript<Long> RELEASE_LEASE = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end
+            return 0
+            """, Long.class);
+
+    private static final RedisScript<Long> ON_HAND = new DefaultRedisScript<>("""
+            local stock = redis.call('GET', KEYS[1])
+            if not stock then return nil end
+            local total = tonumber(stock)
+            for _, held in ipairs(redis.call('HVALS', KEYS[2])) do total = total + tonumber(held) end
+            return total
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final BlockingExecution blockingExecution;
+
+    public RedisReservationStore(StringRedisTemplate redisTemplate, BlockingExecution blockingExecution) {
+        this.redisTemplate = redisTemplate;
+        this.blockingExecution = blockingExecution;
+    }
+
+    @Override
+    public Mono<Long> reserve(Long productId, Long orderId, int quantity, Duration ttl) {
+        return blockingExecution.call(() -> {
+            Long left = redisTemplate.execute(RESERVE, keys(productId), orderId.toString(), String.valueOf(quantity));
+            if (left != null && left >= 0) {
+                redisTemplate.opsForZSet().addIfAbsent(EXPIRY_KEY, member(productId, orderId), System.currentTimeMillis() + ttl.toMillis());
+            }
+            return left;
+        });
+    }
+
+    @Override
+    public Mono<Boolean> seed(Long productId, long quantity) {
+        return blockingExecution.call(() -> redisTemplate.opsForValue().setIfAbsent(stockKey(productId), String.valueOf(quantity)));
+    }
+
+    @Override
+    public Mono<Long> release(Long productId, Long orderId) {
+        return blockingExecution.call(() -> {
+            Long released = redisTemplate.execute(RELEASE, keys(productId), orderId.toString());
+            redisTemplate.opsForZSet().remove(EXPIRY_KEY, member(productId, orderId));
+            return released;
+        });
+    }
+
+    @Override
+    public Mono<Long> commit(Long productId, Long orderId) {
+        return blockingExecution.call(() -> {
+            Long committed = redisTemplate.execute(COMMIT, keys(productId), orderId.toString());
+            if (committed != null && committed > 0) {
+                redisTemplate.opsForSet().add(DIRTY_KEY, productId.toString());
+            }
+            redisTemplate.opsForZSet().remove(EXPIRY_KEY, member(productId, orderId));
+            return committed;
+        });
+    }
+
+    @Override
+    public Mono<Long> unsynced(Long productId) {
+        return blockingExecution.call(() -> {
+            String unsynced = redisTemplate.opsForValue().get(keys(productId).get(2));
+            return unsynced == null ? 0L : Long.parseLong(unsynced);
+        });
+    }
+
+    @Override
+    public Mono<Long> settle(Long productId, long written, long serviceQuantity) {
+        return blockingExecution.call(() -> redisTemplate.execute(SETTLE, keys(productId), String.valueOf(written), String.valueOf(serviceQuantity)));
+    }
+
+    @Override
+    public Mono<String> acquireSyncLease(Long productId, Duration lease) {
+        String token = UUID.randomUUID().toString();
+        return blockingExecution.call(() -> redisTemplate.opsForValue().setIfAbsent(leaseKey(productId), token, lease))
+                .filter(Boolean::booleanValue)
+                .map(acquired -> token);
+    }
+
+    @Override
+    public Mono<Void> releaseSyncLease(Long productId, String token) {
+        return blockingExecution.run(() -> redisTemplate.execute(RELEASE_LEASE, List.of(leaseKey(productId)), token));
+    }
+
+    @Override
+    public Flux<Hold> expired(int limit) {
+        return blockingExecution.call(() -> redisTemplate.opsForZSet().rangeByScore(EXPIRY_KEY, 0, System.currentTimeMillis(), 0, limit))
+                .flatMapIterable(members -> members)
+                .map(member -> {
+                    int separator = member.indexOf(':');
+                    return new Hold(Long.valueOf(member.substring(0, separator)), Long.valueOf(member.substring(separator + 1)));
+                });
+    }
+
+    @Override
+    public Mono<Long> onHand(Long productId) {
+        return blockingExecution.call(() -> redisTemplate.execute(ON_HAND, keys(productId)));
+    }
+
+    @Override
+    public Flux<Long> takeDirty(int limit) {
+        return blockingExecution.call(() -> redisTemplate.opsForSet().pop(DIRTY_KEY, limit))
+                .flatMapIterable(members -> members)
+                .map(Long::valueOf);
+    }
+
+    @Override
+    public Mono<Void> markDirty(Long productId) {
+        return blockingExecution.run(() -> redisTemplate.opsForSet().add(DIRTY_KEY, productId.toString()));
+    }
+
+    // THE HASH TAG PUTS A PRODUCT'S STOCK, HOLDS AND UNSYNCED SALES IN ONE CLUSTER SLOT, WHICH THE SCRIPTS NEED
+    private static List<String> keys(Long productId) {
+        return List.of(stockKey(productId), PREFIX + "holds:{" + productId + "}", PREFIX + "unsynced:{" + productId + "}");
+    }
+
+    private static String stockKey(Long productId) {
+        return PREFIX + "stock:{" + productId + "}";
+    }
+
+    private static String leaseKey(Long productId) {
+        return PREFIX + "sync-lease:{" + productId + "}";
+    }
+
+    private static String member(Long productId, Long orderId) {
+        return productId + ":" + orderId;
+    }
+}
@@ -0,0 +1,95 @@
+package com.secor.ecomcompositorservice;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Redis tier of {@link ViewCache}. The invalidation subscription opens with the context's lifecycle rather
+ * than in the constructor, so creating the bean never needs a live Redis.
+ */
+@Component
+@ConditionalOnProperty(name = "compositor.cache.mode", havingValue = "redis", matchIfMissing = true)
+public class RedisViewStore implements ViewStore, SmartLifecycle {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RedisViewStore.class);
+
+    private final RedisTemplate<String, byte[]> viewRedisTemplate;
+    private final BlockingExecution blockingExecution;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ChannelTopic invalidationTopic;
+
+    public RedisViewStore(@Qualifier("viewRedisTemplate") RedisTemplate<String, byte[]> viewRedisTemplate,
+                          RedisConnectionFactory connectionFactory,
+                          BlockingExecution blockingExecution,
+                          @Value("${compositor.cache.invalidation-channel:compositor:v1:invalidations}") String invalidationChannel) {
+        this.viewRedisTemplate = viewRedisTemplate;
+        this.blockingExecution = blockingExecution;
+        this.invalidationTopic = new ChannelTopic(invalidationChannel);
+        this.listenerContainer = new RedisMessageListenerContainer();
+        this.listenerContainer.setConnectionFactory(connectionFactory);
+        this.listenerContainer.afterPropertiesSet();
+    }
+
+    @Override
+    public void start() {
+        listenerContainer.start();
+    }
+
+    @Override
+    public void stop() {
+        listenerContainer.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return listenerContainer.isRunning();
+    }
+
+    @Override
+    public Mono<byte[]> get(String key) {
+        return blockingExecution.call(() -> viewRedisTemplate.opsForValue().get(key));
+    }
+
+    @Override
+    public Mono<Void> set(String key, byte[] value, Duration ttl) {
+        return blockingExecution.run(() -> viewRedisTemplate.opsForValue().set(key, value, ttl));
+    }
+
+    @Override
+    public Mono<Void> delete(String key) {
+        return blockingExecution.run(() -> viewRedisTemplate.delete(key));
+    }
+
+    @Override
+    public void publishInvalidation(String message) {
+        blockingExecution.run(() -> viewRedisTemplate.convertAndSend(invalidationTopic.getTopic(), message.getBytes(StandardCharsets.UTF_8)))
+                .subscribe(null, error -> LOG.warn("Could not publish cache invalidation {}: {}", message, error.toString()));
+    }
+
+    @Override
+    public void onInvalidation(Consumer<String> listener) {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> listener.accept(new String(message.getBody(), StandardCharsets.UTF_8)),
+                invalidationTopic);
+    }
+
+    @PreDestroy
+    public void close() throws Exception {
+        listenerContainer.destroy();
+    }
+}
@@ -0,0 +1,47 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.context.ContextRegistry;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The point in time (System.nanoTime) by which the current inbound request must be answered. It is held
+ * in a ThreadLocal while the controller assembles its Mono, and Spring MVC copies registered ThreadLocals
+ * into the Reactor context, so downstream calls made later on other threads can still read it.
+ */
+public final class RequestDeadline {
+
+    // REMAINING BUDGET IN MILLISECONDS, RELATIVE SO THAT CLOCK SKEW BETWEEN HOSTS DOES NOT MATTER
+    public static final String HEADER = "X-Request-Timeout";
+    public static final String CONTEXT_KEY = "compositor.request.deadline";
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    static {
+        ContextRegistry.getInstance().registerThreadLocalAccessor(CONTEXT_KEY, CURRENT);
+    }
+
+    private RequestDeadline() {
+    }
+
+    static void set(Duration budget) {
+        CURRENT.set(System.nanoTime() + budget.toNanos());
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    public static Optional<Duration> remaining(ContextView context) {
+        return context.<Long>getOrEmpty(CONTEXT_KEY).map(deadline -> Duration.ofNanos(deadline - System.nanoTime()));
+    }
+
+    public static class ExceededException extends RuntimeException {
+
+        public ExceededException(String serviceName) {
+            super("Request deadline exceeded before " + serviceName + " answered");
+        }
+    }
+}
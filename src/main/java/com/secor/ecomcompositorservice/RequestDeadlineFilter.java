@@ -0,0 +1,52 @@
+package com.secor.ecomcompositorservice;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Starts the deadline clock for every inbound request: the caller's X-Request-Timeout if it sent a
+ * tighter, positive one, otherwise compositor.resilience.request-timeout.
+ */
+@Component
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    private final ResilienceProperties properties;
+
+    public RequestDeadlineFilter(ResilienceProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestDeadline.set(budget(request.getHeader(RequestDeadline.HEADER)));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+    private Duration budget(String header) {
+        Duration budget = properties.getRequestTimeout();
+        if (header != null) {
+            try {
+                Duration requested = Duration.ofMillis(Long.parseLong(header.trim()));
+                // A BUDGET OF ZERO OR LESS WOULD FAIL EVERY DOWNSTREAM CALL BEFORE IT IS SENT, SO IT IS IGNORED
+                if (requested.toMillis() > 0 && requested.compareTo(budget) < 0) {
+                    return requested;
+                }
+            } catch (NumberFormatException e) {
+                // AN UNREADABLE BUDGET FALLS BACK TO OUR OWN
+            }
+        }
+        return budget;
+    }
+}
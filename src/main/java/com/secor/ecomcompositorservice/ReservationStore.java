@@ -0,0 +1,85 @@
+package com.secor.ecomcompositorservice;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Where {@link InventoryReservations} keeps available stock and per-order holds. Every operation on one
+ * product is atomic. Redis in production, an in-memory stand-in in local mode.
+ */
+public interface ReservationStore {
+
+    long INSUFFICIENT = -1;
+    long NOT_SEEDED = -2;
+
+    /**
+     * Holds {@code quantity} for the order if that much is available. Returns the stock left, INSUFFICIENT, or
+     * NOT_SEEDED when the product has no stock figure yet. Reserving again for an order that already holds
+     * stock succeeds without taking more.
+     */
+    Mono<Long> reserve(Long productId, Long orderId, int quantity, Duration ttl);
+
+    /**
+     * Sets the product's available stock unless another node already has.
+     */
+    Mono<Boolean> seed(Long productId, long quantity);
+
+    /**
+     * Returns the order's hold to available stock. Returns the quantity released, 0 if there was no hold.
+     */
+    Mono<Long> release(Long productId, Long orderId);
+
+    /**
+     * Turns the order's hold into a sale - the stock stays taken, counted as unsynced - and queues the product
+     * for reconciliation. Returns the quantity committed, 0 if there was no hold.
+     */
+    Mono<Long> commit(Long productId, Long orderId);
+
+    /**
+     * Units sold but not yet written back to the inventory service.
+     */
+    Mono<Long> unsynced(Long productId);
+
+    /**
+     * Records that {@code written} unsynced units have been taken off the inventory service's figure, which now
+     * reads {@code serviceQuantity}, and moves available stock by whatever else changed there (a restock, a
+     * manual correction) so that available, held and unsynced units add up to that figure again. Returns the
+     * adjustment, 0 for a product that was never seeded.
+     */
+    Mono<Long> settle(Long productId, long written, long serviceQuantity);
+
+    /**
+     * Takes the product's sync lease, which every node must hold from reading {@link #unsynced} until the
+     * matching {@link #settle}, so the same sales are never written back twice. Returns a token for
+     * {@link #releaseSyncLease}, or empty while someone else holds it. The lease lapses after {@code lease}.
+     */
+    Mono<String> acquireSyncLease(Long productId, Duration lease);
+
+    /**
+     * Gives the lease back, unless it already lapsed and was taken by someone else.
+     */
+    Mono<Void> releaseSyncLease(Long productId, String token);
+
+    /**
+     * Holds whose TTL has passed, oldest first.
+     */
+    Flux<Hold> expired(int limit);
+
+    /**
+     * Available stock plus everything still held, i.e. what the inventory service shows once every sale is
+     * written back.
+     */
+    Mono<Long> onHand(Long productId);
+
+    /**
+     * Removes and returns up to {@code limit} products whose sales have not been written back yet.
+     */
+    Flux<Long> takeDirty(int limit);
+
+    Mono<Void> markDirty(Long productId);
+
+    record Hold(Long productId, Long orderId) {
+    }
+}
@@ -0,0 +1,102 @@
+package com.secor.ecomcompositorservice;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Isolates one downstream service: a circuit breaker around the call, a bulkhead around every attempt,
+ * the inbound request's remaining deadline as the timeout (and forwarded as X-Request-Timeout), and for
+ * single-resource GETs (/products/7, not the full list, a page or a batch) an optional hedge - a second
+ * attempt that races the first once it has been pending too long. Registered outside the load balancing
+ * filter, so a hedge usually lands on a different instance.
+ */
+public class ResilienceExchangeFilter implements ExchangeFilterFunction {
+
+    private final String serviceName;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final Duration hedgeDelay;
+    private final Counter hedged;
+    private final Counter deadlineExceeded;
+
+    public ResilienceExchangeFilter(String serviceName, CircuitBreaker circuitBreaker, Bulkhead bulkhead, Duration hedgeDelay,
+                                    Counter hedged, Counter deadlineExceeded) {
+        this.serviceName = serviceName;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.hedgeDelay = hedgeDelay;
+        this.hedged = hedged;
+        this.deadlineExceeded = deadlineExceeded;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> {
+            Optional<Duration> remaining = RequestDeadline.remaining(context);
+            if (remaining.isEmpty()) {
+                return call(request, next);
+            }
+            Duration budget = remaining.get();
+            if (budget.isNegative() || budget.isZero()) {
+                deadlineExceeded.increment();
+                return Mono.error(new RequestDeadline.ExceededException(serviceName));
+            }
+            ClientRequest bounded = ClientRequest.from(request)
+                    .headers(headers -> headers.set(RequestDeadline.HEADER, String.valueOf(budget.toMillis())))
+                    .build();
+            return call(bounded, next)
+                    .timeout(budget, Mono.defer(() -> {
+                        deadlineExceeded.increment();
+                        return Mono.error(new RequestDeadline.ExceededException(serviceName));
+                    }));
+        });
+    }
+
+    private Mono<ClientResponse> call(ClientRequest request, ExchangeFunction next) {
+        Mono<ClientResponse> call = hedgeDelay == null || !isSingleResourceGet(request)
+                ? attempt(request, next)
+                : Mono.firstWithValue(attempt(request, next), Mono.delay(hedgeDelay).then(Mono.defer(() -> {
+                    hedged.increment();
+                    return attempt(request, next);
+                })));
+        return call.transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                // A RESPONSE THAT LOST THE HEDGE RACE STILL HOLDS A POOLED CONNECTION
+                .doOnDiscard(ClientResponse.class, response -> response.releaseBody().subscribe());
+    }
+
+    // LIST, PAGE AND BATCH READS ROUTINELY OUTLAST A DELAY TUNED FOR ONE ROW, AND HEDGING THEM WOULD DOUBLE
+    // THE HEAVIEST LOAD ON THE SERVICE; ONLY A GET ENDING IN AN ID, WITHOUT A QUERY, IS WORTH A SECOND ATTEMPT
+    static boolean isSingleResourceGet(ClientRequest request) {
+        if (!HttpMethod.GET.equals(request.method()) || request.url().getRawQuery() != null) {
+            return false;
+        }
+        String path = request.url().getRawPath();
+        int lastSegment = path.lastIndexOf('/') + 1;
+        if (lastSegment >= path.length()) {
+            return false;
+        }
+        for (int i = lastSegment; i < path.length(); i++) {
+            if (!Character.isDigit(path.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A HEDGE ALSO NEEDS A BULKHEAD PERMIT, SO A SATURATED SERVICE STOPS GETTING EXTRA ATTEMPTS
+    private Mono<ClientResponse> attempt(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> next.exchange(request)).transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+}
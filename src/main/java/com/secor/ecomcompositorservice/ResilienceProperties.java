@@ -0,0 +1,71 @@
+package com.secor.ecomcompositorservice;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Circuit breaker, bulkhead and hedging settings for the downstream WebClients. Anything not set under
+ * compositor.resilience.services.&lt;service-name&gt; falls back to compositor.resilience.defaults.
+ */
+@Getter @Setter
+@ConfigurationProperties(prefix = "compositor.resilience")
+public class ResilienceProperties {
+
+    // BUDGET FOR A WHOLE INBOUND REQUEST WHEN THE CALLER DOES NOT SEND ONE
+    private Duration requestTimeout = Duration.ofSeconds(10);
+
+    private Policy defaults = Policy.defaults();
+    private Map<String, Policy> services = new HashMap<>();
+
+    public Policy forService(String serviceName) {
+        Policy overrides = services.get(serviceName);
+        return overrides == null ? defaults : overrides.withFallback(defaults);
+    }
+
+    @Getter @Setter
+    public static class Policy {
+
+        private Float failureRateThreshold;
+        private Float slowCallRateThreshold;
+        private Duration slowCallDuration;
+        private Duration slidingWindow;
+        private Integer minimumNumberOfCalls;
+        private Duration waitInOpenState;
+        private Integer permittedCallsInHalfOpenState;
+        private Integer maxConcurrentCalls;
+        // UNSET MEANS NO HEDGING; OTHERWISE A SINGLE-RESOURCE GET STILL PENDING AFTER THIS LONG IS SENT AGAIN
+        private Duration hedgeDelay;
+
+        static Policy defaults() {
+            Policy policy = new Policy();
+            policy.failureRateThreshold = 50f;
+            policy.slowCallRateThreshold = 80f;
+            policy.slowCallDuration = Duration.ofSeconds(2);
+            policy.slidingWindow = Duration.ofSeconds(10);
+            policy.minimumNumberOfCalls = 20;
+            policy.waitInOpenState = Duration.ofSeconds(10);
+            policy.permittedCallsInHalfOpenState = 5;
+            policy.maxConcurrentCalls = 100;
+            return policy;
+        }
+
+        Policy withFallback(Policy fallback) {
+            Policy merged = new Policy();
+            merged.failureRateThreshold = failureRateThreshold != null ? failureRateThreshold : fallback.failureRateThreshold;
+            merged.slowCallRateThreshold = slowCallRateThreshold != null ? slowCallRateThreshold : fallback.slowCallRateThreshold;
+            merged.slowCallDuration = slowCallDuration != null ? slowCallDuration : fallback.slowCallDuration;
+            merged.slidingWindow = slidingWindow != null ? slidingWindow : fallback.slidingWindow;
+            merged.minimumNumberOfCalls = minimumNumberOfCalls != null ? minimumNumberOfCalls : fallback.minimumNumberOfCalls;
+            merged.waitInOpenState = waitInOpenState != null ? waitInOpenState : fallback.waitInOpenState;
+            merged.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState != null ? permittedCallsInHalfOpenState : fallback.permittedCallsInHalfOpenState;
+            merged.maxConcurrentCalls = maxConcurrentCalls != null ? maxConcurrentCalls : fallback.maxConcurrentCalls;
+            merged.hedgeDelay = hedgeDelay != null ? hedgeDelay : fallback.hedgeDelay;
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.secor.ecomcompositorservice;
+
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoundRobinStrategy implements LoadBalancerStrategy {
+
+    private final AtomicInteger position = new AtomicInteger();
+
+    @Override
+    public ServiceInstance choose(List<ServiceInstance> instances, ServiceInstanceRegistry registry) {
+        return instances.get(Math.floorMod(position.getAndIncrement(), instances.size()));
+    }
+}
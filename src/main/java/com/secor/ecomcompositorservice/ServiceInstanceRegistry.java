@@ -0,0 +1,87 @@
+package com.secor.ecomcompositorservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Live instance lists per downstream service, refreshed from discovery in the background so the
+ * request path never waits on it, plus the per-instance load the balancing strategies look at. Nothing is
+ * looked up while beans are created: a downstream that is not registered yet only makes the compositor
+ * unready (see {@link DownstreamHealthIndicator}) until the next refresh finds it.
+ */
+@Component
+public class ServiceInstanceRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceInstanceRegistry.class);
+
+    private final DiscoveryClient discoveryClient;
+    private final Map<String, List<ServiceInstance>> instances = new ConcurrentHashMap<>();
+    private final Map<String, InstanceLoad> loads = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ServiceInstanceRegistry(DiscoveryClient discoveryClient) {
+        this.discoveryClient = discoveryClient;
+    }
+
+    public List<ServiceInstance> getInstances(String serviceName) {
+        List<ServiceInstance> known = instances.get(serviceName);
+        if (known == null || known.isEmpty()) {
+            known = fetch(serviceName);
+        }
+        return known;
+    }
+
+    /**
+     * Registers a downstream so the background refresh looks it up before the first request does.
+     */
+    public void track(String serviceName) {
+        instances.putIfAbsent(serviceName, List.of());
+    }
+
+    /**
+     * The last known instances of every tracked downstream, without asking discovery.
+     */
+    public Map<String, List<ServiceInstance>> known() {
+        return Map.copyOf(instances);
+    }
+
+    public InstanceLoad loadOf(ServiceInstance instance) {
+        return loads.computeIfAbsent(key(instance), key -> new InstanceLoad());
+    }
+
+    @Scheduled(fixedDelayString = "${compositor.loadbalancer.refresh-interval-ms:15000}")
+    public void refresh() {
+        instances.keySet().forEach(this::fetch);
+        Set<String> live = instances.values().stream()
+                .flatMap(List::stream)
+                .map(ServiceInstanceRegistry::key)
+                .collect(Collectors.toSet());
+        loads.keySet().retainAll(live);
+    }
+
+    private List<ServiceInstance> fetch(String serviceName) {
+        try {
+            List<ServiceInstance> fetched = List.copyOf(discoveryClient.getInstances(serviceName));
+            instances.put(serviceName, fetched);
+            return fetched;
+        } catch (RuntimeException e) {
+            LOG.warn("Could not refresh instances of {}, keeping the last known list: {}", serviceName, e.toString());
+            return instances.getOrDefault(serviceName, List.of());
+        }
+    }
+
+    private static String key(ServiceInstance instance) {
+        return instance.getServiceId() + "@" + instance.getHost() + ":" + instance.getPort();
+    }
+}
@@ -0,0 +1,87 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical reads: the first caller for a key runs the load, everyone who asks for
+ * the same key while it is in flight (or within the optional sharing window after it succeeded) gets the
+ * same result. Callers share the returned instances, so anything that mutates a result must copy it first.
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Duration window;
+
+    public SingleFlight(MeterRegistry meterRegistry,
+                        @Value("${compositor.singleflight.window:0ms}") Duration window) {
+        this.meterRegistry = meterRegistry;
+        this.window = window;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> mono(String name, Object id, Supplier<Mono<T>> loader) {
+        return Mono.defer(() -> {
+            String key = name + ":" + id;
+            boolean[] leader = {false};
+            Flight flight = flights.computeIfAbsent(key, k -> {
+                leader[0] = true;
+                return new Flight(k, loader);
+            });
+            calls(name, leader[0] ? "leader" : "coalesced").increment();
+            return (Mono<T>) flight.result;
+        });
+    }
+
+    public <T> Flux<T> flux(String name, Object id, Supplier<Flux<T>> loader) {
+        return this.<List<T>>mono(name, id, () -> loader.get().collectList())
+                .flatMapIterable(items -> items);
+    }
+
+    public int inFlight() {
+        return flights.size();
+    }
+
+    private Counter calls(String name, String result) {
+        return counters.computeIfAbsent(name + "|" + result, key -> Counter.builder("compositor.singleflight.calls")
+                .description("Reads that ran a downstream load (leader) or joined one already in flight (coalesced)")
+                .tag("flight", name)
+                .tag("result", result)
+                .register(meterRegistry));
+    }
+
+    private final class Flight {
+
+        final Mono<Object> result;
+
+        Flight(String key, Supplier<? extends Mono<?>> loader) {
+            // A FAILED LOAD IS FORGOTTEN AT ONCE SO THE NEXT CALLER RETRIES INSTEAD OF SEEING THE SAME ERROR
+            this.result = Mono.defer(loader).cast(Object.class)
+                    .doOnError(error -> flights.remove(key, this))
+                    .doOnSuccess(value -> release(key))
+                    .cache();
+        }
+
+        private void release(String key) {
+            if (window.isZero() || window.isNegative()) {
+                flights.remove(key, this);
+            } else {
+                Schedulers.parallel().schedule(() -> flights.remove(key, this), window.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
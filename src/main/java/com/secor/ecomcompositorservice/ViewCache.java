@@ -0,0 +1,253 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Component
+public class ViewCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ViewCache.class);
+
+    @Value("${compositor.cache.key-prefix:compositor:v1}")
+    String keyPrefix = "compositor:v1";
+
+    // SMILE IS BINARY JSON - SMALLER AND CHEAPER TO PARSE THAN JDK SERIALIZATION OR TEXT JSON
+    private final ObjectMapper codec = new ObjectMapper(new SmileFactory())
+            .registerModule(new JavaTimeModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // INVALIDATIONS ARE BROADCAST AS "<nodeId>|<key>" SO A NODE CAN SKIP ITS OWN MESSAGES
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ViewStore store;
+    private final Cache<String, NearEntry> nearCache;
+    private final Map<CachedView, Duration> ttls = new EnumMap<>(CachedView.class);
+    private final Map<CachedView, Duration> nearTtls = new EnumMap<>(CachedView.class);
+    private final Map<CachedView, ViewStats> stats = new EnumMap<>(CachedView.class);
+
+    public ViewCache(ViewStore store,
+                     MeterRegistry meterRegistry,
+                     @Value("${compositor.cache.ttl.catalog:1m}") Duration catalogTtl,
+                     @Value("${compositor.cache.ttl.product:10m}") Duration productTtl,
+                     @Value("${compositor.cache.ttl.inventory:5s}") Duration inventoryTtl,
+                     @Value("${compositor.cache.near.ttl.catalog:10s}") Duration nearCatalogTtl,
+                     @Value("${compositor.cache.near.ttl.product:30s}") Duration nearProductTtl,
+                     @Value("${compositor.cache.near.max-size:10000}") long nearMaxSize) {
+        this.store = store;
+        ttls.put(CachedView.CATALOG, catalogTtl);
+        ttls.put(CachedView.PRODUCT, productTtl);
+        ttls.put(CachedView.INVENTORY, inventoryTtl);
+        // INVENTORY CHANGES TOO OFTEN TO BE HELD IN HEAP ON EVERY NODE
+        nearTtls.put(CachedView.CATALOG, nearCatalogTtl);
+        nearTtls.put(CachedView.PRODUCT, nearProductTtl);
+        for (CachedView view : CachedView.values()) {
+            stats.put(view, new ViewStats(view, meterRegistry));
+        }
+        // SIZE-BOUNDED CAFFEINE EVICTS BY W-TINYLFU, SO ONE CATALOG SCAN CANNOT FLUSH THE HOT PRODUCTS
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(nearMaxSize)
+                .expireAfter(new NearEntryExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, nearCache, "compositor.near");
+        store.onInvalidation(this::onInvalidation);
+    }
+
+    public <T> Mono<T> get(CachedView view, Object id, Class<T> type, Supplier<Mono<T>> loader) {
+        JavaType javaType = codec.getTypeFactory().constructType(type);
+        return readThrough(view, id, javaType, loader);
+    }
+
+    public <T> Flux<T> getList(CachedView view, Object id, Class<T> type, Supplier<Flux<T>> loader) {
+        JavaType javaType = codec.getTypeFactory().constructCollectionType(List.class, type);
+        return this.<List<T>>readThrough(view, id, javaType, () -> loader.get().collectList().map(List::copyOf))
+                .flatMapIterable(list -> list);
+    }
+
+    public Mono<Void> evict(CachedView view, Object id) {
+        String key = key(view, id);
+        nearCache.invalidate(key);
+        return store.delete(key)
+                .doOnSuccess(done -> {
+                    if (nearTtls.containsKey(view)) {
+                        store.publishInvalidation(nodeId + "|" + key);
+                    }
+                })
+                .onErrorResume(error -> {
+                    LOG.warn("Could not evict {}: {}", key, error.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private <T> Mono<T> readThrough(CachedView view, Object id, JavaType javaType, Supplier<Mono<T>> loader) {
+        String key = key(view, id);
+        ViewStats viewStats = stats.get(view);
+        Duration nearTtl = nearTtls.get(view);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            if (nearTtl != null) {
+                NearEntry near = nearCache.getIfPresent(key);
+                if (near != null) {
+                    viewStats.nearHit(System.nanoTime() - start);
+                    @SuppressWarnings("unchecked")
+                    T value = (T) near.value();
+                    return Mono.just(value);
+                }
+            }
+            return this.<T>read(key, javaType)
+                    .doOnNext(hit -> {
+                        viewStats.hit(System.nanoTime() - start);
+                        putNear(key, hit, nearTtl);
+                    })
+                    .switchIfEmpty(Mono.defer(() -> {
+                        long loadStart = System.nanoTime();
+                        return loader.get().doOnNext(loaded -> {
+                            viewStats.miss(System.nanoTime() - loadStart);
+                            putNear(key, loaded, nearTtl);
+                            write(key, loaded, ttls.get(view));
+                        });
+                    }));
+        });
+    }
+
+    private <T> Mono<T> read(String key, JavaType javaType) {
+        return store.get(key)
+                .<T>handle((bytes, sink) -> {
+                    try {
+                        sink.next(codec.readValue(bytes, javaType));
+                    } catch (IOException e) {
+                        LOG.warn("Dropping undecodable cache entry {}: {}", key, e.toString());
+                        sink.complete();
+                    }
+                })
+                .onErrorResume(error -> {
+                    LOG.warn("Cache read failed for {}, going to the source: {}", key, error.toString());
+                    return Mono.empty();
+                });
+    }
+
+    // FIRE AND FORGET - THE CALLER ALREADY HAS ITS VALUE
+    private void write(String key, Object value, Duration ttl) {
+        byte[] bytes;
+        try {
+            bytes = codec.writeValueAsBytes(value);
+        } catch (IOException e) {
+            LOG.warn("Could not encode cache entry {}: {}", key, e.toString());
+            return;
+        }
+        store.set(key, bytes, ttl)
+                .subscribe(null, error -> LOG.warn("Cache write failed for {}: {}", key, error.toString()));
+    }
+
+    private void putNear(String key, Object value, Duration nearTtl) {
+        if (nearTtl != null) {
+            nearCache.put(key, new NearEntry(value, nearTtl.toNanos()));
+        }
+    }
+
+    private void onInvalidation(String message) {
+        int separator = message.indexOf('|');
+        if (separator < 0 || message.startsWith(nodeId + "|")) {
+            return;
+        }
+        nearCache.invalidate(message.substring(separator + 1));
+    }
+
+    String key(CachedView view, Object id) {
+        return keyPrefix + ":" + view.getNamespace() + ":" + id;
+    }
+
+    private record NearEntry(Object value, long ttlNanos) {
+    }
+
+    private static class NearEntryExpiry implements Expiry<String, NearEntry> {
+
+        @Override
+        public long expireAfterCreate(String key, NearEntry entry, long currentTime) {
+            return entry.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, NearEntry entry, long currentTime, long currentDuration) {
+            return entry.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String key, NearEntry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private static class ViewStats {
+
+        private final Counter nearHits;
+        private final Counter hits;
+        private final Counter misses;
+        private final Counter latencySaved;
+        private final Timer loadTimer;
+        // EWMA OF THE SOURCE LATENCY, USED TO ESTIMATE WHAT EACH HIT SAVED
+        private final AtomicLong ewmaLoadNanos = new AtomicLong();
+
+        ViewStats(CachedView view, MeterRegistry meterRegistry) {
+            String name = view.getNamespace();
+            this.nearHits = Counter.builder("compositor.cache.requests").tag("view", name).tag("result", "near-hit").register(meterRegistry);
+            this.hits = Counter.builder("compositor.cache.requests").tag("view", name).tag("result", "hit").register(meterRegistry);
+            this.misses = Counter.builder("compositor.cache.requests").tag("view", name).tag("result", "miss").register(meterRegistry);
+            this.latencySaved = Counter.builder("compositor.cache.latency.saved").tag("view", name).baseUnit("seconds")
+                    .description("Estimated downstream latency avoided by cache hits")
+                    .register(meterRegistry);
+            this.loadTimer = Timer.builder("compositor.cache.load").tag("view", name)
+                    .description("Downstream latency on cache misses")
+                    .register(meterRegistry);
+        }
+
+        void nearHit(long readNanos) {
+            nearHits.increment();
+            saved(readNanos);
+        }
+
+        void hit(long readNanos) {
+            hits.increment();
+            saved(readNanos);
+        }
+
+        private void saved(long readNanos) {
+            long saved = ewmaLoadNanos.get() - readNanos;
+            if (saved > 0) {
+                latencySaved.increment(saved / 1e9);
+            }
+        }
+
+        void miss(long loadNanos) {
+            misses.increment();
+            loadTimer.record(loadNanos, TimeUnit.NANOSECONDS);
+            ewmaLoadNanos.updateAndGet(previous -> previous == 0 ? loadNanos : (long) (previous * 0.8 + loadNanos * 0.2));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.secor.ecomcompositorservice;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Shared (cross-node) tier behind {@link ViewCache}. Redis in production, an in-memory stand-in in local mode.
+ */
+public interface ViewStore {
+
+    Mono<byte[]> get(String key);
+
+    Mono<Void> set(String key, byte[] value, Duration ttl);
+
+    Mono<Void> delete(String key);
+
+    void publishInvalidation(String message);
+
+    void onInvalidation(Consumer<String> listener);
+}
@@ -0,0 +1,98 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlFilterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AdmissionControlFilter filter = new AdmissionControlFilter(meterRegistry, true, 2, 1, 10, 1, 0.8, 0.5, Duration.ofSeconds(1));
+
+    // STANDS IN FOR THE CONTROLLER RETURNING A MONO: THE REQUEST GOES ASYNC AND IS ANSWERED LATER
+    private final FilterChain asyncChain = (request, response) -> request.startAsync();
+
+    @Test
+    void rejectsOverTheLimitAndShedsCatalogReadsWhileOrdersAreBusy() throws Exception {
+        MockHttpServletRequest first = call("/api/v1/createOrder", 200);
+        call("/api/v1/createOrder", 200);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(request("/api/v1/createOrder"), rejected, asyncChain);
+
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+
+        // ORDERS ARE AT THEIR LIMIT, SO THE CATALOG ONLY GETS HALF OF ITS OWN
+        call("/api/v1/productCatalog", 200);
+        call("/api/v1/productCatalog", 503);
+        assertEquals(1.0, meterRegistry.get("compositor.admission.rejected").tags("endpoint", "productCatalog", "reason", "shed").counter().count());
+
+        ((MockAsyncContext) first.getAsyncContext()).complete();
+        call("/api/v1/createOrder", 200);
+        assertEquals(1.0, meterRegistry.get("compositor.admission.rejected").tags("endpoint", "createOrder", "reason", "limit").counter().count());
+    }
+
+    @Test
+    void bulkOrdersAndCatalogStreamsHaveTheirOwnLimits() throws Exception {
+        call("/api/v1/createOrders", 200);
+        call("/api/v1/createOrders", 200);
+        call("/api/v1/createOrders", 503);
+        call("/api/v1/createOrder", 200);
+
+        MockHttpServletRequest stream = request("/api/v1/productCatalog");
+        stream.addHeader("Accept", "application/x-ndjson");
+        MockHttpServletResponse streamed = new MockHttpServletResponse();
+        filter.doFilter(stream, streamed, asyncChain);
+        MockHttpServletRequest secondStream = request("/api/v1/productCatalog");
+        secondStream.addHeader("Accept", "text/event-stream");
+        MockHttpServletResponse refused = new MockHttpServletResponse();
+        filter.doFilter(secondStream, refused, asyncChain);
+
+        // THE ONE OPEN STREAM USES UP THE STREAM SLOTS, NOT THE ONES FOR CATALOG PAGES
+        assertEquals(200, streamed.getStatus());
+        assertEquals(503, refused.getStatus());
+        assertEquals(1.0, meterRegistry.get("compositor.admission.rejected").tags("endpoint", "productCatalogStream", "reason", "shed").counter().count());
+        call("/api/v1/productCatalog", 200);
+    }
+
+    @Test
+    void limitGrowsWhileLatencyHoldsAndShrinksWhenRequestsQueue() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 100);
+        for (int i = 0; i < 200; i++) {
+            while (limit.tryAcquire(1.0)) {
+                // FILL EVERY SLOT SO THE ENDPOINT IS NOT APP-LIMITED
+            }
+            limit.release(Duration.ofMillis(20).toNanos());
+        }
+        int grown = limit.getLimit();
+        assertTrue(grown > 10, "limit was " + grown);
+
+        for (int i = 0; i < 50; i++) {
+            limit.release(Duration.ofMillis(200).toNanos());
+            limit.tryAcquire(1.0);
+        }
+        assertTrue(limit.getLimit() < grown / 2, "limit was " + limit.getLimit());
+    }
+
+    private MockHttpServletRequest call(String path, int expectedStatus) throws Exception {
+        MockHttpServletRequest request = request(path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, asyncChain);
+        assertEquals(expectedStatus, response.getStatus());
+        return request;
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
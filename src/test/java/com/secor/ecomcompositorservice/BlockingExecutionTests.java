@@ -0,0 +1,69 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockingExecutionTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BlockingExecution blockingExecution = new BlockingExecution(false, true, meterRegistry);
+
+    @Test
+    void offloadedCallsLeaveTheNonBlockingThreadTheyWereIssuedOn() {
+        String thread = Mono.defer(() -> blockingExecution.call(() -> {
+                    blockingExecution.checkBlockingAllowed("redis");
+                    return Thread.currentThread().getName();
+                }))
+                .subscribeOn(Schedulers.parallel())
+                .block();
+
+        assertTrue(thread.startsWith("boundedElastic"), thread);
+        assertEquals(1, meterRegistry.get("compositor.blocking.calls").timer().count());
+    }
+
+    @Test
+    void strictModeRefusesBlockingCallsOnNonBlockingThreads() {
+        StepVerifier.create(Mono.fromRunnable(() -> blockingExecution.checkBlockingAllowed("jdbc")).subscribeOn(Schedulers.parallel()))
+                .expectErrorMatches(error -> error instanceof IllegalStateException && error.getMessage().startsWith("Blocking jdbc call"))
+                .verify();
+
+        assertEquals(1.0, meterRegistry.get("compositor.blocking.violations").tag("resource", "jdbc").counter().count());
+    }
+
+    @Test
+    void theDataSourceAndJedisFactoryRefuseToConnectFromAnEventLoopInStrictMode() {
+        new ApplicationContextRunner()
+                .withPropertyValues("compositor.blocking.strict=true")
+                .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+                .withBean(DataSource.class, () -> new DriverManagerDataSource("jdbc:h2:mem:blocking-guard"))
+                .withUserConfiguration(BlockingExecution.class, BlockingDetectionConfig.class, RedisConfig.class)
+                .run(context -> {
+                    DataSource dataSource = context.getBean(DataSource.class);
+                    JedisConnectionFactory jedis = context.getBean(JedisConnectionFactory.class);
+
+                    StepVerifier.create(Mono.fromCallable(dataSource::getConnection).subscribeOn(Schedulers.parallel()))
+                            .expectErrorMatches(error -> error.getMessage().startsWith("Blocking jdbc call"))
+                            .verify();
+                    StepVerifier.create(Mono.fromCallable(jedis::getConnection).subscribeOn(Schedulers.parallel()))
+                            .expectErrorMatches(error -> error.getMessage().startsWith("Blocking redis call"))
+                            .verify();
+                    // OFFLOADED, THE SAME DATASOURCE HANDS OUT CONNECTIONS AS USUAL
+                    try (Connection connection = context.getBean(BlockingExecution.class).call(dataSource::getConnection).block()) {
+                        assertTrue(connection.isValid(1));
+                    }
+                });
+    }
+}
@@ -0,0 +1,55 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CatalogFieldsTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final CatalogFields catalogFields = new CatalogFields(objectMapper, 4);
+
+    @Test
+    void writesOnlyTheRequestedFields() throws Exception {
+        ProductCatalogView row = row();
+
+        assertEquals("{\"product\":{\"productId\":7,\"price\":10.00},\"inventory\":{\"quantity\":3}}",
+                catalogFields.write(row, catalogFields.parse("productId, price ,quantity")));
+        assertEquals("[{\"product\":{\"productName\":\"Lamp\"},\"inventory\":{\"productId\":7}}]",
+                new String(catalogFields.write(List.of(row), catalogFields.parse("productName,inventory.productId")), StandardCharsets.UTF_8));
+        assertEquals("{\"product\":{\"productId\":7}}", catalogFields.write(row, catalogFields.parse("productId")));
+        // THE SHARED MAPPER STILL WRITES EVERY FIELD
+        assertEquals(7, objectMapper.readTree(objectMapper.writeValueAsString(row)).get("product").size());
+    }
+
+    @Test
+    void noFieldsMeansEverythingAndUnknownFieldsAreRefused() {
+        assertNull(catalogFields.parse(" "));
+        ResponseStatusException refused = assertThrows(ResponseStatusException.class, () -> catalogFields.parse("productId,colour"));
+        assertEquals(400, refused.getStatusCode().value());
+    }
+
+    private ProductCatalogView row() {
+        ProductView product = new ProductView();
+        product.setProductId(7L);
+        product.setProductName("Lamp");
+        product.setPrice(new BigDecimal("10.00"));
+        InventoryView inventory = new InventoryView();
+        inventory.setInventoryId(3L);
+        inventory.setProductId(7L);
+        inventory.setQuantity(3);
+        ProductCatalogView row = new ProductCatalogView();
+        row.setProduct(product);
+        row.setInventory(inventory);
+        return row;
+    }
+}
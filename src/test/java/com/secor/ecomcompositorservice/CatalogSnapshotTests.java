@@ -0,0 +1,156 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogSnapshotTests {
+
+    @Test
+    void inventoryWritesPatchTheSnapshotAndChangeItsEtag() {
+        CatalogSnapshot catalogSnapshot = catalogSnapshot(json("[{\"productId\":3},{\"productId\":1},{\"productId\":2}]"));
+
+        CatalogSnapshot.Snapshot built = catalogSnapshot.rebuild().block();
+        String etag = built.etag();
+        InventoryView sold = new InventoryView();
+        sold.setInventoryId(12L);
+        sold.setProductId(2L);
+        sold.setQuantity(4);
+        catalogSnapshot.updateInventory(sold);
+        assertEquals(built, catalogSnapshot.current());
+        catalogSnapshot.applyPatches();
+        CatalogSnapshot.Snapshot patched = catalogSnapshot.current();
+
+        assertEquals(List.of(2L, 3L), patched.page(1L, 10).stream().map(row -> row.getProduct().getProductId()).toList());
+        assertEquals(4, patched.page(1L, 1).get(0).getInventory().getQuantity());
+        assertEquals(5, built.page(1L, 1).get(0).getInventory().getQuantity());
+        assertNotEquals(etag, patched.etag());
+        assertTrue(patched.matches("W/" + patched.etag()));
+        assertFalse(patched.matches(etag));
+    }
+
+    @Test
+    void patchesAppliedDuringARebuildSurviveIt() {
+        CatalogSnapshot catalogSnapshot = catalogSnapshot(json("[{\"productId\":1},{\"productId\":2}]"));
+        catalogSnapshot.rebuild().block();
+        Sinks.Empty<Void> catalogAnswers = Sinks.empty();
+        WebClient live = catalogSnapshot.catalogWebClient;
+        catalogSnapshot.catalogWebClient = WebClient.builder()
+                .exchangeFunction(request -> catalogAnswers.asMono().then(live.get().exchangeToMono(Mono::just)))
+                .build();
+
+        CompletableFuture<CatalogSnapshot.Snapshot> rebuild = catalogSnapshot.rebuild().toFuture();
+        InventoryView sold = new InventoryView();
+        sold.setInventoryId(12L);
+        sold.setProductId(2L);
+        sold.setQuantity(4);
+        catalogSnapshot.updateInventory(sold);
+        catalogSnapshot.applyPatches();
+        catalogAnswers.tryEmitEmpty();
+        rebuild.join();
+
+        assertEquals(4, catalogSnapshot.current().page(1L, 1).get(0).getInventory().getQuantity());
+    }
+
+    @Test
+    void rebuildEvictsCachedViewsOfChangedProducts() {
+        CatalogSnapshot catalogSnapshot = catalogSnapshot(json("[{\"productId\":1,\"productName\":\"Phone\"},{\"productId\":2,\"productName\":\"Case\"}]"));
+        catalogSnapshot.rebuild().block();
+        catalogSnapshot.viewCache.get(CachedView.PRODUCT, 1L, ProductView.class, () -> Mono.just(product("Phone"))).block();
+        catalogSnapshot.viewCache.get(CachedView.PRODUCT, 2L, ProductView.class, () -> Mono.just(product("Case"))).block();
+
+        catalogSnapshot.catalogWebClient = json("[{\"productId\":1,\"productName\":\"Phone\"},{\"productId\":2,\"productName\":\"Case v2\"}]");
+        catalogSnapshot.rebuild().block();
+
+        assertEquals("Phone", catalogSnapshot.viewCache.get(CachedView.PRODUCT, 1L, ProductView.class, () -> Mono.just(product("Phone v2"))).block().getProductName());
+        assertEquals("Case v2", catalogSnapshot.viewCache.get(CachedView.PRODUCT, 2L, ProductView.class, () -> Mono.just(product("Case v2"))).block().getProductName());
+    }
+
+    @Test
+    void cursorsResumeMidProductAndMarkTheLastPage() {
+        CatalogSnapshot catalogSnapshot = catalogSnapshot(json("[{\"productId\":3},{\"productId\":1},{\"productId\":2}]"));
+        catalogSnapshot.rebuild().block();
+        CompositorController controller = new CompositorController();
+        controller.catalogSnapshot = catalogSnapshot;
+        controller.catalogFields = new CatalogFields(catalogSnapshot.objectMapper, 4);
+
+        List<String> resumed = controller.streamProductCatalogEvents(null, 10, null, "1:11").map(ServerSentEvent::id).collectList().block();
+        ResponseEntity<?> firstPage = controller.getProductsAndInventories(null, 2, null, null).block();
+        ResponseEntity<?> lastPage = controller.getProductsAndInventories(2L, 2, null, null).block();
+
+        assertEquals(List.of("1:14", "2:12", "3:13"), resumed);
+        assertEquals("</api/v1/productCatalog?after=2&limit=2>; rel=\"next\"", firstPage.getHeaders().getFirst(HttpHeaders.LINK));
+        assertNull(lastPage.getHeaders().getFirst(HttpHeaders.LINK));
+    }
+
+    @Test
+    void streamsWithoutALimitCarryTheWholeCatalogPastThePageCap() {
+        CatalogSnapshot catalogSnapshot = catalogSnapshot(json("[{\"productId\":3},{\"productId\":1},{\"productId\":2}]"));
+        catalogSnapshot.rebuild().block();
+        CompositorController controller = new CompositorController();
+        controller.catalogSnapshot = catalogSnapshot;
+        controller.catalogFields = new CatalogFields(catalogSnapshot.objectMapper, 4);
+        controller.maxPageSize = 2;
+
+        List<String> streamed = controller.streamProductCatalogEvents(null, null, null, null).map(ServerSentEvent::id).collectList().block();
+        ResponseEntity<?> capped = controller.getProductsAndInventories(0L, null, null, null).block();
+
+        assertEquals(List.of("1:11", "1:14", "2:12", "3:13"), streamed);
+        assertEquals(4L, controller.streamProductCatalog(null, null, null).count().block());
+        assertEquals("</api/v1/productCatalog?after=2&limit=2>; rel=\"next\"", capped.getHeaders().getFirst(HttpHeaders.LINK));
+    }
+
+    private CatalogSnapshot catalogSnapshot(WebClient catalogWebClient) {
+        CatalogSnapshot catalogSnapshot = new CatalogSnapshot(new SimpleMeterRegistry());
+        catalogSnapshot.objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        catalogSnapshot.viewStore = new InMemoryViewStore();
+        catalogSnapshot.viewCache = new ViewCache(catalogSnapshot.viewStore, new SimpleMeterRegistry(),
+                Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(5),
+                Duration.ofSeconds(10), Duration.ofSeconds(30), 100);
+        catalogSnapshot.catalogWebClient = catalogWebClient;
+        catalogSnapshot.inventoryBatchLoader = new InventoryBatchLoader(new SimpleMeterRegistry());
+        catalogSnapshot.inventoryBatchLoader.inventoryWebClient = json("[{\"inventoryId\":14,\"productId\":1,\"quantity\":1},"
+                + "{\"inventoryId\":11,\"productId\":1,\"quantity\":5},"
+                + "{\"inventoryId\":12,\"productId\":2,\"quantity\":5},{\"inventoryId\":13,\"productId\":3,\"quantity\":5}]");
+        catalogSnapshot.inventoryBatchLoader.batchSize = 100;
+        catalogSnapshot.inventoryBatchLoader.batchWindow = Duration.ofMillis(20);
+        catalogSnapshot.inventoryBatchLoader.concurrency = 4;
+        catalogSnapshot.inventoryBatchLoader.batchPath = "/batch";
+        return catalogSnapshot;
+    }
+
+    private static ProductView product(String name) {
+        ProductView product = new ProductView();
+        product.setProductName(name);
+        return product;
+    }
+
+    private WebClient json(String body) {
+        return WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(body)
+                        .build()))
+                .build();
+    }
+}
@@ -0,0 +1,54 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomerDirectoryTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CustomersRepository customersRepository = mock(CustomersRepository.class);
+    private final CustomerDirectory customerDirectory = new CustomerDirectory(customersRepository,
+            new BlockingExecution(false, true, meterRegistry), meterRegistry,
+            Duration.ofMinutes(10), Duration.ofSeconds(30), 1000, Duration.ofMillis(200), 200);
+
+    @Test
+    void concurrentMissesAreLoadedInOneQueryAndUnknownIdsAreRemembered() {
+        // EVEN IDS EXIST, ODD ONES DO NOT
+        when(customersRepository.findByCustomerIdIn(any())).thenAnswer(invocation -> invocation.<Collection<Long>>getArgument(0).stream()
+                .filter(customerId -> customerId % 2 == 0)
+                .map(this::customer)
+                .toList());
+
+        List<Long> found = Flux.range(1, 100)
+                .flatMap(i -> customerDirectory.find((long) (i % 50)).map(Customers::getCustomerId).subscribeOn(Schedulers.parallel()))
+                .collectList()
+                .block();
+
+        assertEquals(50, found.size());
+        verify(customersRepository, times(1)).findByCustomerIdIn(any());
+        StepVerifier.create(customerDirectory.validate(7L))
+                .expectErrorMessage("Unknown customer ID: 7")
+                .verify();
+        verify(customersRepository, times(1)).findByCustomerIdIn(any());
+    }
+
+    private Customers customer(Long customerId) {
+        Customers customer = new Customers();
+        customer.setCustomerId(customerId);
+        return customer;
+    }
+}
@@ -0,0 +1,43 @@
+package com.secor.ecomcompositorservice;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class DownstreamHealthIndicatorTests {
+
+    @Test
+    void outOfServiceUntilEveryTrackedDownstreamHasAnInstance() {
+        DiscoveryClient discoveryClient = mock(DiscoveryClient.class);
+        ServiceInstanceRegistry registry = new ServiceInstanceRegistry(discoveryClient);
+        registry.track("ecom-catalog-service");
+        registry.track("ecom-order-service");
+        DownstreamHealthIndicator indicator = new DownstreamHealthIndicator(registry, true);
+
+        // TRACKING AND PROBING NEVER REACH DISCOVERY; ONLY THE BACKGROUND REFRESH DOES
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+        verifyNoInteractions(discoveryClient);
+
+        ServiceInstance catalog = new DefaultServiceInstance("catalog-1", "ecom-catalog-service", "10.0.0.1", 8080, false);
+        when(discoveryClient.getInstances("ecom-catalog-service")).thenReturn(List.of(catalog));
+        when(discoveryClient.getInstances("ecom-order-service")).thenReturn(List.of());
+        registry.refresh();
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+        assertEquals(Map.of("ecom-catalog-service", 1, "ecom-order-service", 0), indicator.health().getDetails().get("instances"));
+
+        ServiceInstance order = new DefaultServiceInstance("order-1", "ecom-order-service", "10.0.0.2", 8080, false);
+        when(discoveryClient.getInstances("ecom-order-service")).thenReturn(List.of(order));
+        registry.refresh();
+        assertEquals(Status.UP, indicator.health().getStatus());
+    }
+}
@@ -0,0 +1,39 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DownstreamMetricsFilterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void timesCallsByUriTemplateAndCountsServerErrors() {
+        WebClient client = WebClient.builder()
+                .baseUrl("http://ecom-catalog-service/products")
+                .filter(new DownstreamMetricsFilter("ecom-catalog-service", meterRegistry, new Duration[]{Duration.ofMillis(50)}, 0))
+                .exchangeFunction(request -> Mono.just(request.url().getPath().endsWith("/9")
+                        ? ClientResponse.create(HttpStatus.BAD_GATEWAY).build()
+                        : ClientResponse.create(HttpStatus.OK).header(HttpHeaders.CONTENT_LENGTH, "128").body("{}").build()))
+                .build();
+
+        for (long productId = 1; productId <= 9; productId++) {
+            client.get().uri("/{id}", productId).exchangeToMono(ClientResponse::releaseBody).block();
+        }
+
+        assertEquals(8, meterRegistry.get("compositor.downstream.requests")
+                .tags("service", "ecom-catalog-service", "route", "/products/{id}", "status", "200").timer().count());
+        assertEquals(1.0, meterRegistry.get("compositor.downstream.errors").tags("status", "502").counter().count());
+        assertEquals(1024.0, meterRegistry.get("compositor.downstream.response.size").summary().totalAmount());
+        assertEquals(0.0, meterRegistry.get("compositor.downstream.inflight").gauge().value());
+    }
+}
@@ -0,0 +1,108 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IdempotencyTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InMemoryIdempotencyStore store = new InMemoryIdempotencyStore();
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    void duplicatesJoinTheFirstRequestOrGetItsStoredResponse() {
+        // TWO NODES SHARING ONE STORE: DUPLICATES ON THE FIRST JOIN IN PROCESS, THE ONE ON THE SECOND POLLS THE STORE
+        Idempotency first = idempotency();
+        Idempotency second = idempotency();
+        Mono<ResponseEntity<String>> slowOrder = Mono.delay(Duration.ofMillis(200))
+                .map(tick -> ResponseEntity.ok("Order created successfully ORDER_ID: " + executions.incrementAndGet()));
+
+        List<ResponseEntity<String>> responses = Flux.merge(
+                        first.execute("createOrder", "k1", "productId=7", () -> slowOrder),
+                        first.execute("createOrder", "k1", "productId=7", () -> slowOrder),
+                        second.execute("createOrder", "k1", "productId=7", () -> slowOrder))
+                .collectList()
+                .block();
+        ResponseEntity<String> later = second.execute("createOrder", "k1", "productId=7", () -> slowOrder).block();
+        ResponseEntity<String> reused = second.execute("createOrder", "k1", "productId=8", () -> slowOrder).block();
+
+        assertEquals(1, executions.get());
+        responses.forEach(response -> assertEquals("Order created successfully ORDER_ID: 1", response.getBody()));
+        assertEquals("true", later.getHeaders().getFirst(Idempotency.REPLAYED_HEADER));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+    }
+
+    @Test
+    void failedRequestsCanBeRetriedWithTheSameKey() {
+        Idempotency idempotency = idempotency();
+        Mono<ResponseEntity<String>> flaky = Mono.defer(() -> executions.incrementAndGet() == 1
+                ? Mono.error(new IllegalStateException("payment service unavailable"))
+                : Mono.just(ResponseEntity.ok("Order confirmed successfully ORDER_ID: 1")));
+
+        assertEquals("payment service unavailable", idempotency.execute("processPayment", "k2", "orderId=1", () -> flaky)
+                .onErrorResume(error -> Mono.just(ResponseEntity.badRequest().body(error.getMessage())))
+                .block()
+                .getBody());
+        ResponseEntity<String> retried = idempotency.execute("processPayment", "k2", "orderId=1", () -> flaky).block();
+
+        assertEquals(2, executions.get());
+        assertEquals(HttpStatus.OK, retried.getStatusCode());
+        assertNull(retried.getHeaders().getFirst(Idempotency.REPLAYED_HEADER));
+    }
+
+    @Test
+    void replaysCarryTheLocationAndContentTypeOfTheOriginal() {
+        Idempotency idempotency = idempotency();
+        Mono<ResponseEntity<String>> created = Mono.fromSupplier(() -> ResponseEntity.created(URI.create("/api/v1/orders/" + executions.incrementAndGet()))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body("Order created successfully ORDER_ID: 1\nline two"));
+
+        idempotency.execute("createOrder", "k3", "productId=7", () -> created).block();
+        ResponseEntity<String> replayed = idempotency.execute("createOrder", "k3", "productId=7", () -> created).block();
+
+        assertEquals(1, executions.get());
+        assertEquals(HttpStatus.CREATED, replayed.getStatusCode());
+        assertEquals("/api/v1/orders/1", replayed.getHeaders().getFirst(HttpHeaders.LOCATION));
+        assertEquals(MediaType.TEXT_PLAIN, replayed.getHeaders().getContentType());
+        assertEquals("Order created successfully ORDER_ID: 1\nline two", replayed.getBody());
+    }
+
+    @Test
+    void aResponseThatCouldNotBeRecordedKeepsItsKeyClaimed() {
+        InMemoryIdempotencyStore failingStore = new InMemoryIdempotencyStore() {
+            @Override
+            public Mono<Void> complete(String key, IdempotencyStore.Entry entry, Duration ttl) {
+                return Mono.error(new IllegalStateException("store unavailable"));
+            }
+        };
+        Idempotency idempotency = new Idempotency(failingStore, new SingleFlight(meterRegistry, Duration.ZERO), meterRegistry,
+                Duration.ofMinutes(1), Duration.ofSeconds(30), Duration.ofMillis(100), Duration.ofMillis(20));
+        Mono<ResponseEntity<String>> order = Mono.fromSupplier(() -> ResponseEntity.ok("Order created successfully ORDER_ID: " + executions.incrementAndGet()));
+
+        ResponseEntity<String> first = idempotency.execute("createOrder", "k4", "productId=7", () -> order).block();
+        ResponseEntity<String> repeat = idempotency.execute("createOrder", "k4", "productId=7", () -> order).block();
+
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertEquals(HttpStatus.CONFLICT, repeat.getStatusCode());
+        assertEquals(1, executions.get());
+    }
+
+    private Idempotency idempotency() {
+        return new Idempotency(store, new SingleFlight(meterRegistry, Duration.ZERO), meterRegistry,
+                Duration.ofMinutes(1), Duration.ofSeconds(30), Duration.ofSeconds(5), Duration.ofMillis(20));
+    }
+}
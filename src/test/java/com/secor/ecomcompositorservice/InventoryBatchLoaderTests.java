@@ -0,0 +1,118 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InventoryBatchLoaderTests {
+
+    private final Queue<String> requests = new ConcurrentLinkedQueue<>();
+
+    @Test
+    void joinsInWindowsOfBatchSizeAndKeepsCatalogOrder() {
+        InventoryBatchLoader loader = loader(HttpStatus.OK);
+        Flux<ProductView> products = Flux.fromStream(LongStream.rangeClosed(1, 250).mapToObj(InventoryBatchLoaderTests::product));
+
+        List<Long> joined = loader.joinInventory(products).map(row -> row.getInventory().getProductId()).collectList().block();
+
+        assertEquals(LongStream.rangeClosed(1, 250).boxed().toList(), joined);
+        assertEquals(List.of(100, 100, 50), requests.stream().map(path -> path.split(",").length).toList());
+    }
+
+    @Test
+    void missingBatchEndpointFallsBackUntilTheReprobeInterval() {
+        InventoryBatchLoader loader = loader(HttpStatus.NOT_FOUND);
+        loader.reprobeInterval = Duration.ofHours(1);
+
+        assertEquals(3, loader.getInventories(List.of(1L, 2L, 3L)).count().block());
+        assertEquals(1, batchRequests());
+        assertEquals(3, loader.getInventories(List.of(1L, 2L, 3L)).count().block());
+        assertEquals(1, batchRequests());
+
+        InventoryBatchLoader reprobing = loader(HttpStatus.NOT_FOUND);
+        reprobing.reprobeInterval = Duration.ZERO;
+        reprobing.getInventories(List.of(1L, 2L)).count().block();
+        reprobing.getInventories(List.of(1L, 2L)).count().block();
+        assertEquals(3, batchRequests());
+    }
+
+    @Test
+    void badRequestFallsBackForThatRequestOnly() {
+        InventoryBatchLoader loader = loader(HttpStatus.BAD_REQUEST);
+
+        assertEquals(3, loader.getInventories(List.of(1L, 2L, 3L)).count().block());
+        assertEquals(3, loader.getInventories(List.of(1L, 2L, 3L)).count().block());
+        assertEquals(2, batchRequests());
+    }
+
+    @Test
+    void repeatedBadRequestsMarkTheBatchEndpointUnsupported() {
+        InventoryBatchLoader loader = loader(HttpStatus.BAD_REQUEST);
+        loader.reprobeInterval = Duration.ofHours(1);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(3, loader.getInventories(List.of(1L, 2L, 3L)).count().block());
+        }
+        assertEquals(3, batchRequests());
+    }
+
+    private long batchRequests() {
+        return requests.stream().filter(path -> path.startsWith("/batch")).count();
+    }
+
+    private InventoryBatchLoader loader(HttpStatus batchStatus) {
+        InventoryBatchLoader loader = new InventoryBatchLoader(new SimpleMeterRegistry());
+        loader.batchSize = 100;
+        loader.batchWindow = Duration.ofMillis(20);
+        loader.concurrency = 4;
+        loader.batchPath = "/batch";
+        loader.inventoryWebClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    String path = request.url().getPath();
+                    if (path.startsWith("/batch")) {
+                        String ids = request.url().getQuery().replace("productIds=", "").replace("&", ",");
+                        requests.add(path + "?" + ids);
+                        if (batchStatus != HttpStatus.OK) {
+                            return Mono.just(ClientResponse.create(batchStatus).build());
+                        }
+                        return json(List.of(ids.split(",")).stream().map(InventoryBatchLoaderTests::inventory).collect(Collectors.joining(",", "[", "]")));
+                    }
+                    requests.add(path);
+                    return json("[" + inventory(path.substring(1)) + "]");
+                })
+                .build();
+        return loader;
+    }
+
+    private static Mono<ClientResponse> json(String body) {
+        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build());
+    }
+
+    private static String inventory(String productId) {
+        return "{\"inventoryId\":" + productId + ",\"productId\":" + productId + ",\"quantity\":5}";
+    }
+
+    private static ProductView product(long productId) {
+        ProductView product = new ProductView();
+        product.setProductId(productId);
+        return product;
+    }
+}
@@ -0,0 +1,213 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryReservationsTests {
+
+    private final InMemoryReservationStore store = new InMemoryReservationStore();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void concurrentOrdersNeverTakeMoreThanIsInStock() {
+        InventoryReservations reservations = new InventoryReservations(store, meterRegistry, Duration.ofMinutes(15));
+        reservations.inventoryWebClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body("[{\"inventoryId\":3,\"productId\":7,\"quantity\":50}]")
+                        .build()))
+                .build();
+
+        Long reserved = Flux.range(1, 200)
+                .flatMap(orderId -> reservations.reserve(7L, (long) orderId, 1, Mono.just(50))
+                        .thenReturn(1L)
+                        .onErrorResume(InventoryReservations.InsufficientInventoryException.class, error -> Mono.just(0L))
+                        .subscribeOn(Schedulers.parallel()))
+                .reduce(0L, Long::sum)
+                .block();
+
+        assertEquals(50L, reserved);
+        assertEquals(150.0, meterRegistry.get("compositor.inventory.reservations").tag("result", "insufficient").counter().count());
+        assertEquals(50L, store.onHand(7L).block());
+    }
+
+    @Test
+    void expiredHoldsGoBackToStockAndSalesAreWrittenBackToTheInventoryService() {
+        List<String> puts = new CopyOnWriteArrayList<>();
+        InventoryReservations reservations = new InventoryReservations(store, meterRegistry, Duration.ZERO);
+        reservations.viewCache = new ViewCache(new InMemoryViewStore(), meterRegistry,
+                Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(5),
+                Duration.ofSeconds(10), Duration.ofSeconds(30), 100);
+        reservations.catalogSnapshot = new CatalogSnapshot(meterRegistry);
+        reservations.inventoryWebClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    if (request.method() == HttpMethod.PUT) {
+                        puts.add(request.url().getPath());
+                    }
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body("[{\"inventoryId\":3,\"productId\":7,\"quantity\":10}]")
+                            .build());
+                })
+                .build();
+
+        reservations.reserve(7L, 1L, 4, Mono.just(10)).block();
+        reservations.reserve(7L, 2L, 3, Mono.just(10)).block();
+        reservations.commit(7L, 1L).block();
+        reservations.releaseExpired();
+
+        assertEquals(6L, store.onHand(7L).block());
+        assertEquals(1.0, meterRegistry.get("compositor.inventory.reservations").tag("result", "expired").counter().count());
+
+        reservations.reconcile();
+
+        assertEquals(List.of("/3"), puts);
+        assertEquals(List.of(), store.takeDirty(10).collectList().block());
+    }
+
+    @Test
+    void restocksOnTheInventoryServiceSurviveTheWriteBackAndReachSoldOutProducts() {
+        AtomicInteger serviceQuantity = new AtomicInteger(2);
+        InventoryReservations reservations = new InventoryReservations(store, meterRegistry, Duration.ofMinutes(15));
+        reservations.resyncInterval = Duration.ZERO;
+        reservations.viewCache = new ViewCache(new InMemoryViewStore(), meterRegistry,
+                Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(5),
+                Duration.ofSeconds(10), Duration.ofSeconds(30), 100);
+        reservations.catalogSnapshot = new CatalogSnapshot(meterRegistry);
+        reservations.inventoryWebClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    if (request.method() == HttpMethod.PUT) {
+                        return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+                    }
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body("[{\"inventoryId\":3,\"productId\":7,\"quantity\":" + serviceQuantity.get() + "}]")
+                            .build());
+                })
+                .build();
+
+        reservations.reserve(7L, 1L, 2, Mono.just(serviceQuantity.get())).block();
+        reservations.commit(7L, 1L).block();
+        serviceQuantity.addAndGet(5);
+
+        // THE SERVICE SHOWS 7 AFTER THE RESTOCK, SO THE TWO UNITS SOLD LEAVE 5 RATHER THAN 0
+        reservations.reconcile();
+        serviceQuantity.set(5);
+
+        assertEquals(5L, store.onHand(7L).block());
+        assertEquals(0L, store.unsynced(7L).block());
+
+        serviceQuantity.addAndGet(3);
+        reservations.reserve(7L, 2L, 8, Mono.just(0)).block();
+
+        assertEquals(8L, store.onHand(7L).block());
+        assertEquals(2.0, meterRegistry.get("compositor.inventory.reservations").tag("result", "adjusted").counter().count());
+    }
+
+    @Test
+    void twoNodesNeverWriteBackTheSameSalesTwice() throws Exception {
+        AtomicInteger serviceQuantity = new AtomicInteger(10);
+        CountDownLatch firstGetSent = new CountDownLatch(1);
+        CountDownLatch firstGetAnswers = new CountDownLatch(1);
+        InventoryReservations nodeA = node(inventoryService(serviceQuantity, firstGetSent, firstGetAnswers));
+        InventoryReservations nodeB = node(inventoryService(serviceQuantity, new CountDownLatch(1), new CountDownLatch(0)));
+
+        nodeA.reserve(7L, 1L, 2, Mono.just(serviceQuantity.get())).block();
+        nodeA.commit(7L, 1L).block();
+        // NODE A READS THE SERVICE'S FIGURE, THEN STALLS BEFORE ITS PUT
+        CompletableFuture<Void> stalled = CompletableFuture.runAsync(nodeA::reconcile);
+        assertTrue(firstGetSent.await(5, TimeUnit.SECONDS));
+
+        nodeB.reserve(7L, 2L, 3, Mono.just(0)).block();
+        nodeB.commit(7L, 2L).block();
+        nodeB.reconcile();
+        firstGetAnswers.countDown();
+        stalled.get(5, TimeUnit.SECONDS);
+        nodeB.reconcile();
+
+        assertEquals(5, serviceQuantity.get());
+        assertEquals(5L, store.onHand(7L).block());
+        assertEquals(0L, store.unsynced(7L).block());
+    }
+
+    private InventoryReservations node(WebClient inventoryWebClient) {
+        InventoryReservations reservations = new InventoryReservations(store, meterRegistry, Duration.ofMinutes(15));
+        reservations.viewCache = new ViewCache(new InMemoryViewStore(), meterRegistry,
+                Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(5),
+                Duration.ofSeconds(10), Duration.ofSeconds(30), 100);
+        reservations.catalogSnapshot = new CatalogSnapshot(meterRegistry);
+        reservations.inventoryWebClient = inventoryWebClient;
+        return reservations;
+    }
+
+    // A STATEFUL INVENTORY SERVICE: A PUT REPLACES THE QUANTITY; THE FIRST GET READS IT, SIGNALS AND WAITS FOR THE GATE
+    private static WebClient inventoryService(AtomicInteger quantity, CountDownLatch getSent, CountDownLatch gate) {
+        return WebClient.builder()
+                .exchangeFunction(request -> {
+                    if (request.method() == HttpMethod.PUT) {
+                        return body(request)
+                                .doOnNext(body -> quantity.set(Integer.parseInt(body.replaceAll(".*\"quantity\":(-?\\d+).*", "$1"))))
+                                .thenReturn(ClientResponse.create(HttpStatus.OK).build());
+                    }
+                    int read = quantity.get();
+                    boolean first = getSent.getCount() > 0;
+                    getSent.countDown();
+                    return Mono.fromCallable(() -> first && gate.await(5, TimeUnit.SECONDS))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .thenReturn(ClientResponse.create(HttpStatus.OK)
+                                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                    .body("[{\"inventoryId\":3,\"productId\":7,\"quantity\":" + read + "}]")
+                                    .build());
+                })
+                .build();
+    }
+
+    private static Mono<String> body(ClientRequest request) {
+        MockClientHttpRequest written = new MockClientHttpRequest(request.method(), request.url());
+        return request.body().insert(written, new BodyInserter.Context() {
+                    @Override
+                    public List<HttpMessageWriter<?>> messageWriters() {
+                        return ExchangeStrategies.withDefaults().messageWriters();
+                    }
+
+                    @Override
+                    public Optional<ServerHttpRequest> serverRequest() {
+                        return Optional.empty();
+                    }
+
+                    @Override
+                    public Map<String, Object> hints() {
+                        return Map.of();
+                    }
+                })
+                .then(Mono.defer(written::getBodyAsString));
+    }
+}
@@ -0,0 +1,131 @@
+package com.secor.ecomcompositorservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadBalancingExchangeFilterTests {
+
+    private final List<DisposableServer> stubs = new ArrayList<>();
+    private final List<ServiceInstance> instances = new ArrayList<>();
+
+    @AfterEach
+    void stopStubs() {
+        stubs.forEach(DisposableServer::disposeNow);
+    }
+
+    @Test
+    void roundRobinAlternatesBetweenInstances() {
+        startStub("a", Duration.ZERO);
+        startStub("b", Duration.ZERO);
+        WebClient client = client("round-robin");
+
+        Map<String, Long> hits = callTimes(client, 10);
+
+        assertEquals(5L, hits.get("a"));
+        assertEquals(5L, hits.get("b"));
+    }
+
+    @Test
+    void ewmaPrefersTheFasterInstance() {
+        startStub("fast", Duration.ZERO);
+        startStub("slow", Duration.ofMillis(50));
+        WebClient client = client("ewma");
+
+        Map<String, Long> hits = callTimes(client, 40);
+
+        assertTrue(hits.getOrDefault("fast", 0L) > 30, "fast instance should take most of the traffic: " + hits);
+    }
+
+    @Test
+    void picksUpInstancesThatRegisterAfterTheFirstRequest() {
+        startStub("a", Duration.ZERO);
+        ServiceInstanceRegistry registry = new ServiceInstanceRegistry(fakeDiscoveryClient());
+        WebClient client = client(registry, "round-robin");
+        assertEquals(Map.of("a", 2L), callTimes(client, 2));
+
+        startStub("b", Duration.ZERO);
+        registry.refresh();
+
+        assertEquals(Map.of("a", 2L, "b", 2L), callTimes(client, 4));
+    }
+
+    @Test
+    void failuresArePenalisedAndCancelsAreNotSampled() {
+        InstanceLoad refused = new InstanceLoad();
+        refused.start();
+        refused.fail(Duration.ofMillis(1).toNanos());
+        InstanceLoad cancelled = new InstanceLoad();
+        cancelled.start();
+        cancelled.abandon();
+
+        assertTrue(refused.getEwmaNanos() > Duration.ofMillis(500).toNanos(), "a fast failure must not look like a fast instance");
+        assertEquals(0, refused.getInFlight());
+        assertEquals(0, cancelled.getEwmaNanos());
+        assertEquals(0, cancelled.getInFlight());
+    }
+
+    private void startStub(String name, Duration latency) {
+        DisposableServer server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.get("/products/whoami", (request, response) ->
+                        response.sendString(Mono.delay(latency).thenReturn(name))))
+                .bindNow();
+        stubs.add(server);
+        instances.add(new DefaultServiceInstance(name, "ecom-catalog-service", "localhost", server.port(), false));
+    }
+
+    private WebClient client(String strategy) {
+        return client(new ServiceInstanceRegistry(fakeDiscoveryClient()), strategy);
+    }
+
+    private WebClient client(ServiceInstanceRegistry registry, String strategy) {
+        return WebClient.builder()
+                .baseUrl("http://ecom-catalog-service/products")
+                .filter(new LoadBalancingExchangeFilter("ecom-catalog-service", registry, LoadBalancerStrategy.named(strategy)))
+                .build();
+    }
+
+    private Map<String, Long> callTimes(WebClient client, int times) {
+        List<String> answers = new ArrayList<>();
+        for (int i = 0; i < times; i++) {
+            answers.add(client.get().uri("/whoami").retrieve().bodyToMono(String.class).block());
+        }
+        return answers.stream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    }
+
+    private DiscoveryClient fakeDiscoveryClient() {
+        return new DiscoveryClient() {
+            @Override
+            public String description() {
+                return "fake";
+            }
+
+            @Override
+            public List<ServiceInstance> getInstances(String serviceId) {
+                return List.copyOf(instances);
+            }
+
+            @Override
+            public List<String> getServices() {
+                return List.of("ecom-catalog-service");
+            }
+        };
+    }
+}
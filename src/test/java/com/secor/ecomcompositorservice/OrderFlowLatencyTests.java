@@ -0,0 +1,269 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Every stubbed downstream call takes {@link #LATENCY} of virtual time, so the time a flow takes
+ * is its critical path in calls: the sequential flows took 3 (createOrder) and 8 (processOrder).
+ */
+@Timeout(30)
+class OrderFlowLatencyTests {
+
+    private static final Duration LATENCY = Duration.ofMillis(100);
+
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    private final ObjectMapper json = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void createOrderRunsStockCheckAndProductLookupTogether() {
+        StepVerifier.withVirtualTime(() -> controller().createOrder(7L, 2, 42L))
+                .expectSubscription()
+                .expectNoEvent(LATENCY.multipliedBy(2).minusMillis(1))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNextMatches(order -> order.getOrderId() == 1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void processOrderReservesStockWhilePaymentIsFetched() {
+        StepVerifier.withVirtualTime(() -> controller().processOrder(1L))
+                .expectSubscription()
+                .expectNoEvent(LATENCY.multipliedBy(4).minusMillis(1))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext("PAYMENT_COMPLETED")
+                .verifyComplete();
+    }
+
+    @Test
+    void createOrdersLooksUpSharedProductsOnceAndPlacesLinesTogether() {
+        CompositorController controller = controller();
+        BulkOrderRequest request = new BulkOrderRequest();
+        request.setCustomerId(42L);
+        request.setLines(List.of(line(7L, 2), line(7L, 1), line(7L, 500)));
+
+        // PRODUCT AND STOCK LOOKUPS ARE SHARED BY ALL LINES, THEN EVERY LINE POSTS ITS ORDER AND PAYMENT AT ONCE
+        StepVerifier.withVirtualTime(() -> controller.createOrders(request))
+                .expectSubscription()
+                .expectNoEvent(LATENCY.multipliedBy(2).minusMillis(1))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNextMatches(result -> result.getLine() == 2 && "REJECTED".equals(result.getStatus()))
+                .expectNoEvent(LATENCY.multipliedBy(2).minusMillis(1))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNextCount(2)
+                .verifyComplete();
+        assertEquals(List.of(1, 1, 2, 2), List.of(calls.get("catalog").get(), calls.get("inventory").get(),
+                calls.get("order").get(), calls.get("payment").get()));
+    }
+
+    @Test
+    void bulkLinesTellCatalogOutagesFromUnknownProductsAndUndoOrdersWhosePaymentFailed() {
+        CompositorController controller = controller();
+        InMemoryReservationStore reservations = new InMemoryReservationStore();
+        controller.inventoryReservations = new InventoryReservations(reservations, new SimpleMeterRegistry(), Duration.ofMinutes(15));
+        List<String> orderUpdates = new CopyOnWriteArrayList<>();
+        controller.catalogWebClient = stub("catalog", request -> request.url().getPath().endsWith("/8") ? HttpStatus.SERVICE_UNAVAILABLE
+                : request.url().getPath().endsWith("/9") ? HttpStatus.NOT_FOUND : product());
+        controller.orderWebClient = stub("order", request -> {
+            if (request.method() == HttpMethod.PUT) {
+                orderUpdates.add(request.url().getPath());
+            }
+            return order();
+        });
+        controller.paymentWebClient = stub("payment", request -> HttpStatus.SERVICE_UNAVAILABLE);
+        BulkOrderRequest request = new BulkOrderRequest();
+        request.setCustomerId(42L);
+        request.setLines(List.of(line(7L, 2), line(8L, 1), line(9L, 1)));
+
+        Map<Long, String> messages = controller.createOrders(request)
+                .collectMap(BulkOrderResult::getProductId, BulkOrderResult::getMessage)
+                .block();
+
+        assertEquals("Product catalog is unavailable for product ID: 8, retry later", messages.get(8L));
+        assertEquals("Unknown product ID: 9", messages.get(9L));
+        assertEquals(List.of("/1"), orderUpdates);
+        assertEquals(0L, reservations.release(7L, 1L).block());
+    }
+
+    @Test
+    void createOrderUndoesTheOrderWhenItsPaymentFails() {
+        CompositorController controller = controller();
+        InMemoryReservationStore reservations = new InMemoryReservationStore();
+        controller.inventoryReservations = new InventoryReservations(reservations, new SimpleMeterRegistry(), Duration.ofMinutes(15));
+        controller.idempotency = new Idempotency(mock(IdempotencyStore.class), controller.singleFlight, new SimpleMeterRegistry(),
+                Duration.ofHours(24), Duration.ofSeconds(30), Duration.ofSeconds(10), Duration.ofMillis(50));
+        List<String> orderUpdates = new CopyOnWriteArrayList<>();
+        controller.orderWebClient = stub("order", request -> {
+            if (request.method() == HttpMethod.PUT) {
+                orderUpdates.add(request.url().getPath());
+            }
+            return order();
+        });
+        controller.paymentWebClient = stub("payment", request -> HttpStatus.SERVICE_UNAVAILABLE);
+
+        ResponseEntity<String> response = controller.createOrderAndPayment(7L, 2, 42L, null).block();
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(List.of("/1"), orderUpdates);
+        assertEquals(0L, reservations.release(7L, 1L).block());
+    }
+
+    @Test
+    void asyncProcessPaymentOnlyWaitsForKafkaAndAWorkerCompletesTheOrder() {
+        CompositorController controller = controller();
+        MockProducer<String, String> producer = new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+        OrderCommands commands = new OrderCommands(new KafkaTemplate<>(() -> producer), new InMemoryViewStore(),
+                "test", Duration.ofMinutes(1), Duration.ofSeconds(1));
+        controller.orderCommands = commands;
+        OrderCommandWorker worker = new OrderCommandWorker(new SimpleMeterRegistry());
+        worker.compositorController = controller;
+        worker.orderCommands = commands;
+
+        StepVerifier.create(commands.submit(1L)).verifyComplete();
+        assertEquals(0, calls.values().stream().mapToInt(AtomicInteger::get).sum());
+        assertEquals(OrderCommands.ACCEPTED, commands.status(1L).block().status());
+
+        ProducerRecord<String, String> sent = producer.history().get(0);
+        assertEquals(OrderCommands.ORDER_COMMANDS_TOPIC, sent.topic());
+        assertEquals("1", sent.key());
+        ConsumerRecord<String, String> command = new ConsumerRecord<>(sent.topic(), 0, 0, sent.key(), sent.value());
+        worker.onCommand(command);
+        assertEquals(OrderCommands.COMPLETED, commands.status(1L).block().status());
+
+        // A REDELIVERED COMMAND FOR A COMPLETED ORDER DOES NOT TOUCH THE DOWNSTREAMS AGAIN
+        int callsAfterFirst = calls.values().stream().mapToInt(AtomicInteger::get).sum();
+        worker.onCommand(command);
+        assertEquals(callsAfterFirst, calls.values().stream().mapToInt(AtomicInteger::get).sum());
+
+        // NOR DOES SUBMITTING IT AGAIN, WHICH ALSO LEAVES ITS STATUS ALONE
+        StepVerifier.create(commands.submit(1L)).verifyComplete();
+        assertEquals(1, producer.history().size());
+        assertEquals(OrderCommands.COMPLETED, commands.status(1L).block().status());
+    }
+
+    private CompositorController controller() {
+        CompositorController controller = new CompositorController();
+        controller.orderEventOutbox = mock(OrderEventOutbox.class);
+        when(controller.orderEventOutbox.record(any(), any(String.class))).thenReturn(Mono.empty());
+        when(controller.orderEventOutbox.record(any(), anyList())).thenReturn(Mono.empty());
+        controller.viewCache = new ViewCache(new InMemoryViewStore(), new SimpleMeterRegistry(),
+                Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(5),
+                Duration.ofSeconds(10), Duration.ofSeconds(30), 100);
+        controller.singleFlight = new SingleFlight(new SimpleMeterRegistry(), Duration.ZERO);
+        controller.inventoryReservations = new InventoryReservations(new InMemoryReservationStore(), new SimpleMeterRegistry(), Duration.ofMinutes(15));
+        CustomersRepository customersRepository = mock(CustomersRepository.class);
+        when(customersRepository.findByCustomerIdIn(any())).thenReturn(List.of(customer()));
+        controller.customerDirectory = new CustomerDirectory(customersRepository, new BlockingExecution(false, true, new SimpleMeterRegistry()),
+                new SimpleMeterRegistry(), Duration.ofMinutes(10), Duration.ofSeconds(30), 1000, Duration.ofMillis(5), 200);
+        controller.catalogWebClient = stub("catalog", request -> product());
+        controller.inventoryWebClient = stub("inventory", request -> inventory());
+        controller.orderWebClient = stub("order", request -> order());
+        controller.paymentWebClient = stub("payment", request -> payment());
+        controller.inventoryBatchLoader = new InventoryBatchLoader(new SimpleMeterRegistry());
+        controller.inventoryBatchLoader.inventoryWebClient = controller.inventoryWebClient;
+        controller.inventoryBatchLoader.batchSize = 100;
+        controller.inventoryBatchLoader.batchWindow = Duration.ofMillis(20);
+        controller.inventoryBatchLoader.concurrency = 4;
+        controller.inventoryBatchLoader.batchPath = "/batch";
+        return controller;
+    }
+
+    private WebClient stub(String service, Function<ClientRequest, Object> responder) {
+        AtomicInteger counter = calls.computeIfAbsent(service, key -> new AtomicInteger());
+        return WebClient.builder()
+                .exchangeFunction(request -> Mono.delay(LATENCY).map(tick -> {
+                    counter.incrementAndGet();
+                    Object body = responder.apply(request);
+                    if (body instanceof HttpStatus status) {
+                        return ClientResponse.create(status).build();
+                    }
+                    try {
+                        return ClientResponse.create(HttpStatus.OK)
+                                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                .body(json.writeValueAsString(body))
+                                .build();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }))
+                .build();
+    }
+
+    private BulkOrderRequest.Line line(Long productId, int quantity) {
+        BulkOrderRequest.Line line = new BulkOrderRequest.Line();
+        line.setProductId(productId);
+        line.setQuantity(quantity);
+        return line;
+    }
+
+    private Customers customer() {
+        Customers customer = new Customers();
+        customer.setCustomerId(42L);
+        return customer;
+    }
+
+    private ProductView product() {
+        ProductView product = new ProductView();
+        product.setProductId(7L);
+        product.setPrice(new BigDecimal("10.00"));
+        return product;
+    }
+
+    private InventoryView inventory() {
+        InventoryView inventory = new InventoryView();
+        inventory.setInventoryId(3L);
+        inventory.setProductId(7L);
+        inventory.setQuantity(100);
+        return inventory;
+    }
+
+    private OrderView order() {
+        OrderView order = new OrderView();
+        order.setOrderId(1L);
+        order.setProductId(7L);
+        order.setQuantity(2);
+        order.setStatus("PENDING_PAYMENT");
+        return order;
+    }
+
+    private PaymentView payment() {
+        PaymentView payment = new PaymentView();
+        payment.setPaymentId(5L);
+        payment.setOrderId(1L);
+        return payment;
+    }
+}
@@ -0,0 +1,141 @@
+package com.secor.ecomcompositorservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxRelayTests {
+
+    @Autowired
+    OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    private final MockProducer<String, String> kafka = new MockProducer<>(true, new StringSerializer(), new StringSerializer()) {
+        @Override
+        public void close(Duration timeout) {
+        }
+    };
+
+    private OrderEventOutbox outbox;
+    private final List<Producer> producers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        outboxEventRepository.deleteAll();
+        outbox = new OrderEventOutbox();
+        outbox.outboxEventRepository = outboxEventRepository;
+        outbox.objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        outbox.blockingExecution = new BlockingExecution(false, true, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (Producer producer : producers) {
+            producer.stop();
+        }
+    }
+
+    @Test
+    void relaysEventsInInsertOrderKeyedByOrderAndClearsTheOutbox() {
+        outbox.record(1L, "ORDER CREATED").block();
+        outbox.record(1L, "PAYMENT CREATED").block();
+        outbox.record(2L, "ORDER CREATED").block();
+
+        relay(2).relay();
+
+        List<ProducerRecord<String, String>> sent = kafka.history();
+        assertEquals(3, sent.size());
+        assertEquals(List.of("1", "1", "2"), sent.stream().map(ProducerRecord::key).toList());
+        assertTrue(sent.get(0).value().contains("ORDER CREATED"));
+        assertTrue(sent.get(1).value().contains("PAYMENT CREATED"));
+        assertEquals("ecom-order-events", sent.get(2).topic());
+        assertEquals(0, outboxEventRepository.count());
+    }
+
+    @Test
+    void keepsEventsKafkaDidNotAcknowledge() {
+        MockProducer<String, String> failing = new MockProducer<>(false, new StringSerializer(), new StringSerializer());
+        outbox.record(1L, "ORDER CREATED").block();
+        OutboxRelay relay = new OutboxRelay(outboxEventRepository, producer(failing),
+                transactionManager, new SimpleMeterRegistry());
+        relay.sendTimeoutMs = 50;
+
+        relay.relay();
+
+        assertEquals(1, outboxEventRepository.count());
+    }
+
+    @Test
+    void holdsBackLaterEventsOfAnOrderWhoseEarlierEventFailed() {
+        MockProducer<String, String> flaky = new MockProducer<>(true, new StringSerializer(), new StringSerializer()) {
+            @Override
+            public synchronized Future<RecordMetadata> send(ProducerRecord<String, String> record, Callback callback) {
+                if ("1".equals(record.key()) && record.value().contains("ORDER CREATED")) {
+                    RuntimeException error = new RuntimeException("broker unavailable");
+                    callback.onCompletion(null, error);
+                    return CompletableFuture.failedFuture(error);
+                }
+                return super.send(record, callback);
+            }
+
+            @Override
+            public void close(Duration timeout) {
+            }
+        };
+        outbox.record(1L, "ORDER CREATED").block();
+        outbox.record(1L, "PAYMENT CREATED").block();
+        outbox.record(2L, "ORDER CREATED").block();
+        OutboxRelay relay = new OutboxRelay(outboxEventRepository, producer(flaky),
+                transactionManager, new SimpleMeterRegistry());
+
+        relay.relay();
+
+        assertEquals(List.of("2"), flaky.history().stream().map(ProducerRecord::key).toList());
+        assertEquals(2, outboxEventRepository.count());
+    }
+
+    private OutboxRelay relay(int batchSize) {
+        OutboxRelay relay = new OutboxRelay(outboxEventRepository, producer(kafka),
+                transactionManager, new SimpleMeterRegistry());
+        relay.batchSize = batchSize;
+        return relay;
+    }
+
+    private Producer producer(MockProducer<String, String> kafka) {
+        Producer producer = new Producer();
+        producer.kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> kafka));
+        producer.meterRegistry = new SimpleMeterRegistry();
+        producer.linger = Duration.ofMillis(5);
+        producer.start();
+        producers.add(producer);
+        return producer;
+    }
+}
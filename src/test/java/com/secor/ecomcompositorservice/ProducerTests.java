@@ -0,0 +1,81 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProducerTests {
+
+    // KAFKATEMPLATE CLOSES NON-TRANSACTIONAL PRODUCERS AFTER EVERY SEND, A REAL FACTORY HANDS OUT A CLOSE-SAFE SHARED ONE
+    private final MockProducer<String, String> kafka = new MockProducer<>(true, new StringSerializer(), new StringSerializer()) {
+        @Override
+        public void close(Duration timeout) {
+        }
+    };
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private Producer producer;
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        if (producer != null) {
+            producer.stop();
+        }
+    }
+
+    @Test
+    void sendsBufferedEventsAndCompletesOnceKafkaAcknowledged() throws Exception {
+        producer = producer(100);
+        producer.start();
+
+        CompletableFuture<Void> first = producer.send("ecom-order-events", "11", "{\"description\":\"ORDER CREATED\"}");
+        CompletableFuture<Void> second = producer.send("ecom-order-events", "12", "{\"description\":\"PAYMENT CREATED\"}");
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        List<ProducerRecord<String, String>> sent = kafka.history();
+        assertEquals("ecom-order-events", sent.get(0).topic());
+        assertEquals("11", sent.get(0).key());
+        assertTrue(sent.get(0).value().contains("\"description\":\"ORDER CREATED\""));
+        assertEquals(2.0, meterRegistry.get("compositor.events.published").counter().count());
+    }
+
+    @Test
+    void rejectsEventsOnceTheBufferIsFull() throws InterruptedException {
+        producer = producer(1);
+        producer.start();
+        // PARK THE PUBLISHER THREAD SO NOTHING DRAINS THE BUFFER
+        producer.stop();
+
+        producer.send("ecom-order-events", "11", "{}");
+
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> producer.send("ecom-order-events", "12", "{}").get());
+        assertInstanceOf(Producer.EventBufferFullException.class, rejected.getCause());
+        assertEquals(1.0, meterRegistry.get("compositor.events.rejected").counter().count());
+    }
+
+    private Producer producer(int capacity) {
+        Producer producer = new Producer();
+        producer.kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> kafka));
+        producer.meterRegistry = meterRegistry;
+        producer.bufferCapacity = capacity;
+        producer.linger = Duration.ofMillis(5);
+        producer.enqueueTimeout = Duration.ofMillis(20);
+        return producer;
+    }
+}
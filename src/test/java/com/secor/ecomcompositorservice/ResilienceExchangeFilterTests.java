@@ -0,0 +1,108 @@
+package com.secor.ecomcompositorservice;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResilienceExchangeFilterTests {
+
+    private static final String SERVICE = "ecom-catalog-service";
+    private static final ClientRequest GET = ClientRequest.create(HttpMethod.GET, URI.create("http://" + SERVICE + "/products/7")).build();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ResilienceProperties properties = new ResilienceProperties();
+
+    @Test
+    void slowGetIsHedgedAndTheFasterAttemptWins() {
+        properties.getServices().put(SERVICE, policy(policy -> policy.setHedgeDelay(Duration.ofMillis(20))));
+        AtomicInteger attempts = new AtomicInteger();
+        ExchangeFunction downstream = request -> attempts.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofSeconds(2)).thenReturn(ClientResponse.create(HttpStatus.OK).body("slow").build())
+                : Mono.just(ClientResponse.create(HttpStatus.OK).body("fast").build());
+
+        ClientResponse response = filter().filter(GET, downstream).block(Duration.ofSeconds(1));
+
+        assertEquals("fast", response.bodyToMono(String.class).block());
+        assertEquals(2, attempts.get());
+        assertEquals(1.0, meterRegistry.get("compositor.downstream.hedged").counter().count());
+    }
+
+    @Test
+    void listPageAndBatchReadsAreNotHedged() {
+        properties.getServices().put(SERVICE, policy(policy -> policy.setHedgeDelay(Duration.ofMillis(20))));
+        AtomicInteger attempts = new AtomicInteger();
+        ExchangeFunction downstream = request -> {
+            attempts.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(100)).thenReturn(ClientResponse.create(HttpStatus.OK).build());
+        };
+        ResilienceExchangeFilter filter = filter();
+
+        for (String path : List.of("/products", "/products?after=7&limit=100", "/inventory/batch?productIds=1,2")) {
+            filter.filter(ClientRequest.create(HttpMethod.GET, URI.create("http://" + SERVICE + path)).build(), downstream).block();
+        }
+
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void circuitOpensOnServerErrorsAndStopsCallingTheService() {
+        properties.getServices().put(SERVICE, policy(policy -> policy.setMinimumNumberOfCalls(4)));
+        AtomicInteger calls = new AtomicInteger();
+        ExchangeFunction failing = request -> {
+            calls.incrementAndGet();
+            return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+        };
+        ResilienceExchangeFilter filter = filter();
+
+        for (int i = 0; i < 4; i++) {
+            filter.filter(GET, failing).block();
+        }
+
+        assertThrows(CallNotPermittedException.class, () -> filter.filter(GET, failing).block());
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    void remainingDeadlineBoundsTheCallAndIsForwarded() {
+        List<String> forwarded = new ArrayList<>();
+        ExchangeFunction downstream = request -> {
+            forwarded.add(request.headers().getFirst(RequestDeadline.HEADER));
+            return Mono.delay(Duration.ofSeconds(2)).thenReturn(ClientResponse.create(HttpStatus.OK).build());
+        };
+
+        assertThrows(RequestDeadline.ExceededException.class, () -> filter().filter(GET, downstream)
+                .contextWrite(context -> context.put(RequestDeadline.CONTEXT_KEY, System.nanoTime() + Duration.ofMillis(100).toNanos()))
+                .block(Duration.ofSeconds(1)));
+
+        assertEquals(1, forwarded.size());
+        assertTrue(Long.parseLong(forwarded.get(0)) <= 100);
+        assertEquals(1.0, meterRegistry.get("compositor.downstream.deadline.exceeded").counter().count());
+    }
+
+    private ResilienceExchangeFilter filter() {
+        return new DownstreamResilience(properties, meterRegistry).filter(SERVICE);
+    }
+
+    private ResilienceProperties.Policy policy(Consumer<ResilienceProperties.Policy> customizer) {
+        ResilienceProperties.Policy policy = new ResilienceProperties.Policy();
+        customizer.accept(policy);
+        return policy;
+    }
+}
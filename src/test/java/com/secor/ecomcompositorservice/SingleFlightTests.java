@@ -0,0 +1,54 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void concurrentReadsOfOneKeyShareOneLoad() {
+        SingleFlight singleFlight = new SingleFlight(meterRegistry, Duration.ZERO);
+        Sinks.One<String> downstream = Sinks.one();
+
+        List<String> answers = Flux.range(0, 5)
+                .flatMap(i -> singleFlight.mono("product", 7L, () -> load(downstream.asMono())))
+                .doOnSubscribe(subscription -> Mono.delay(Duration.ofMillis(20)).subscribe(tick -> downstream.tryEmitValue("shared")))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("shared", "shared", "shared", "shared", "shared"), answers);
+        assertEquals(1, loads.get());
+        assertEquals(4.0, meterRegistry.get("compositor.singleflight.calls").tag("result", "coalesced").counter().count());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void failedLoadsAreRetriedByTheNextCaller() {
+        SingleFlight singleFlight = new SingleFlight(meterRegistry, Duration.ofMinutes(1));
+
+        assertThrows(IllegalStateException.class,
+                () -> singleFlight.mono("order", 1L, () -> load(Mono.<String>error(new IllegalStateException("down")))).block());
+        assertEquals("up", singleFlight.mono("order", 1L, () -> load(Mono.just("up"))).block());
+        // A SUCCESSFUL RESULT IS SHARED FOR THE WINDOW
+        assertEquals("up", singleFlight.mono("order", 1L, () -> load(Mono.just("again"))).block());
+        assertEquals(2, loads.get());
+    }
+
+    private <T> Mono<T> load(Mono<T> source) {
+        loads.incrementAndGet();
+        return source;
+    }
+}
@@ -0,0 +1,70 @@
+package com.secor.ecomcompositorservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ViewCacheTests {
+
+    private final InMemoryViewStore sharedStore = new InMemoryViewStore();
+    private final AtomicInteger sourceCalls = new AtomicInteger();
+
+    @Test
+    void servesRepeatedReadsFromTheNearCache() {
+        ViewCache node = newNode();
+
+        assertEquals("Phone", node.get(CachedView.PRODUCT, 1L, ProductView.class, () -> load("Phone")).block().getProductName());
+        assertEquals("Phone", node.get(CachedView.PRODUCT, 1L, ProductView.class, () -> load("Other")).block().getProductName());
+        assertEquals(1, sourceCalls.get());
+    }
+
+    @Test
+    void secondNodeReadsThroughTheSharedStore() {
+        ViewCache first = newNode();
+        ViewCache second = newNode();
+
+        first.get(CachedView.PRODUCT, 1L, ProductView.class, () -> load("Phone")).block();
+        ProductView fromSecond = second.get(CachedView.PRODUCT, 1L, ProductView.class, () -> load("Other")).block();
+
+        assertEquals("Phone", fromSecond.getProductName());
+        assertEquals(0, new BigDecimal("9.99").compareTo(fromSecond.getPrice()));
+        assertEquals(1, sourceCalls.get());
+    }
+
+    @Test
+    void evictionOnOneNodeInvalidatesNearCopiesOnOthers() {
+        ViewCache first = newNode();
+        ViewCache second = newNode();
+        first.get(CachedView.PRODUCT, 1L, ProductView.class, () -> load("Phone")).block();
+        second.get(CachedView.PRODUCT, 1L, ProductView.class, () -> load("Other")).block();
+
+        first.evict(CachedView.PRODUCT, 1L).block();
+        ProductView reloaded = second.get(CachedView.PRODUCT, 1L, ProductView.class, () -> load("Phone v2")).block();
+
+        assertEquals("Phone v2", reloaded.getProductName());
+        assertEquals(2, sourceCalls.get());
+    }
+
+    private ViewCache newNode() {
+        return new ViewCache(sharedStore, new SimpleMeterRegistry(),
+                Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofSeconds(5),
+                Duration.ofSeconds(10), Duration.ofSeconds(30), 100);
+    }
+
+    private Mono<ProductView> load(String name) {
+        return Mono.fromSupplier(() -> {
+            sourceCalls.incrementAndGet();
+            ProductView product = new ProductView();
+            product.setProductId(1L);
+            product.setProductName(name);
+            product.setPrice(new BigDecimal("9.99"));
+            return product;
+        });
+    }
+}